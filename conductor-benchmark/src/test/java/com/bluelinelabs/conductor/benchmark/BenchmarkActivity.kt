@@ -0,0 +1,21 @@
+package com.bluelinelabs.conductor.benchmark
+
+import android.app.Activity
+import android.os.Bundle
+import com.bluelinelabs.conductor.Conductor
+import com.bluelinelabs.conductor.Router
+
+class BenchmarkActivity : Activity() {
+
+  lateinit var router: Router
+
+  override fun onCreate(savedInstanceState: Bundle?) {
+    super.onCreate(savedInstanceState)
+
+    router = Conductor.attachRouter(
+      this,
+      findViewById(android.R.id.content),
+      savedInstanceState
+    )
+  }
+}
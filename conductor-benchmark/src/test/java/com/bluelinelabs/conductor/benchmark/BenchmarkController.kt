@@ -0,0 +1,23 @@
+package com.bluelinelabs.conductor.benchmark
+
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import com.bluelinelabs.conductor.Controller
+import com.bluelinelabs.conductor.RouterTransaction
+
+class BenchmarkController @JvmOverloads constructor(args: Bundle? = null) : Controller(args) {
+
+  override fun onCreateView(inflater: LayoutInflater, container: ViewGroup, savedViewState: Bundle?): View {
+    // Child routers are hosted directly in this view, so it needs a stable id.
+    return FrameLayout(inflater.context).apply { id = CONTAINER_ID }
+  }
+
+  companion object {
+    const val CONTAINER_ID = 0x7f0a0001
+  }
+}
+
+fun BenchmarkController.asTransaction(): RouterTransaction = RouterTransaction.with(this)
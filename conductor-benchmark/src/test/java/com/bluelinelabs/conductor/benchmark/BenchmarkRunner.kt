@@ -0,0 +1,161 @@
+package com.bluelinelabs.conductor.benchmark
+
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.Locale
+
+/**
+ * A minimal JVM benchmark harness. Each benchmark runs a number of warmup iterations followed by measured
+ * iterations, timing every operation individually so that latency percentiles can be reported alongside
+ * throughput. Allocations are measured per thread when the JVM supports it.
+ *
+ * Per-iteration setup is excluded from all measurements.
+ */
+class BenchmarkRunner(
+  private val warmupIterations: Int = DEFAULT_WARMUP_ITERATIONS,
+  private val measuredIterations: Int = DEFAULT_MEASURED_ITERATIONS
+) {
+
+  private val threadMXBean = (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)
+    ?.takeIf { it.isThreadAllocatedMemorySupported }
+    ?.also { it.isThreadAllocatedMemoryEnabled = true }
+
+  private val results = mutableListOf<BenchmarkResult>()
+
+  @Volatile
+  private var sink: Any? = null
+
+  fun run(name: String, params: Map<String, Any> = emptyMap(), operation: () -> Unit): BenchmarkResult {
+    return run(name, params, setup = { }, operation = { operation() })
+  }
+
+  fun <T> run(name: String, params: Map<String, Any> = emptyMap(), setup: () -> T, operation: (T) -> Unit): BenchmarkResult {
+    repeat(warmupIterations) {
+      operation(setup())
+    }
+
+    val threadId = Thread.currentThread().id
+    val latencies = LongArray(measuredIterations)
+    var allocatedBytes = 0L
+    for (i in 0 until measuredIterations) {
+      val state = setup()
+
+      val allocatedBefore = threadMXBean?.getThreadAllocatedBytes(threadId) ?: 0
+      val start = System.nanoTime()
+      operation(state)
+      latencies[i] = System.nanoTime() - start
+      allocatedBytes += (threadMXBean?.getThreadAllocatedBytes(threadId) ?: 0) - allocatedBefore
+    }
+
+    val result = BenchmarkResult(
+      name = name,
+      params = params,
+      iterations = measuredIterations,
+      latencies = latencies.apply { sort() },
+      allocatedBytesPerOp = if (threadMXBean != null) allocatedBytes / measuredIterations else null
+    )
+    results.add(result)
+    return result
+  }
+
+  /**
+   * Keeps the JIT from eliminating an operation whose result would otherwise be unused.
+   */
+  fun consume(value: Any?) {
+    sink = value
+  }
+
+  /**
+   * Writes all results gathered so far as a single JSON document.
+   */
+  fun writeResults(file: File) {
+    file.parentFile?.mkdirs()
+    file.writeText(
+      buildString {
+        append("{\n")
+        append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n")
+        append("  \"jvm\": ").append(jsonString(System.getProperty("java.vm.name") + " " + System.getProperty("java.version"))).append(",\n")
+        append("  \"warmupIterations\": ").append(warmupIterations).append(",\n")
+        append("  \"benchmarks\": [\n")
+        results.forEachIndexed { index, result ->
+          append(result.toJson("    "))
+          append(if (index < results.size - 1) ",\n" else "\n")
+        }
+        append("  ]\n")
+        append("}\n")
+      }
+    )
+  }
+
+  companion object {
+    const val DEFAULT_WARMUP_ITERATIONS = 500
+    const val DEFAULT_MEASURED_ITERATIONS = 2000
+
+    /**
+     * The directory results are written to. The build points this into the module's build directory.
+     */
+    val outputDir: File
+      get() = File(System.getProperty("conductor.benchmark.outputDir") ?: "build/benchmark-results")
+  }
+}
+
+class BenchmarkResult(
+  val name: String,
+  val params: Map<String, Any>,
+  val iterations: Int,
+  private val latencies: LongArray,
+  val allocatedBytesPerOp: Long?
+) {
+
+  val meanNanos: Double = latencies.average()
+
+  val opsPerSecond: Double = if (meanNanos > 0) 1_000_000_000.0 / meanNanos else 0.0
+
+  fun percentileNanos(percentile: Double): Long {
+    val index = ((latencies.size - 1) * percentile).toInt()
+    return latencies[index]
+  }
+
+  internal fun toJson(indent: String): String {
+    val paramsJson = params.entries.joinToString(", ", "{", "}") { (key, value) ->
+      jsonString(key) + ": " + if (value is Number) value.toString() else jsonString(value.toString())
+    }
+
+    return buildString {
+      append(indent).append("{\n")
+      append(indent).append("  \"name\": ").append(jsonString(name)).append(",\n")
+      append(indent).append("  \"params\": ").append(paramsJson).append(",\n")
+      append(indent).append("  \"iterations\": ").append(iterations).append(",\n")
+      append(indent).append("  \"opsPerSecond\": ").append("%.1f".format(Locale.US, opsPerSecond)).append(",\n")
+      append(indent).append("  \"latencyNanos\": {")
+      append("\"mean\": ").append("%.1f".format(Locale.US, meanNanos))
+      append(", \"p50\": ").append(percentileNanos(0.5))
+      append(", \"p90\": ").append(percentileNanos(0.9))
+      append(", \"p99\": ").append(percentileNanos(0.99))
+      append(", \"max\": ").append(latencies.last())
+      append("},\n")
+      append(indent).append("  \"allocatedBytesPerOp\": ").append(allocatedBytesPerOp?.toString() ?: "null").append("\n")
+      append(indent).append("}")
+    }
+  }
+
+  override fun toString(): String {
+    return "$name $params: ${"%.0f".format(Locale.US, opsPerSecond)} ops/s, p50 ${percentileNanos(0.5)}ns, " +
+      "p99 ${percentileNanos(0.99)}ns, ${allocatedBytesPerOp ?: "?"} B/op"
+  }
+}
+
+private fun jsonString(value: String): String {
+  return buildString {
+    append('"')
+    value.forEach { char ->
+      when (char) {
+        '"' -> append("\\\"")
+        '\\' -> append("\\\\")
+        '\n' -> append("\\n")
+        else -> if (char < ' ') append("\\u%04x".format(char.code)) else append(char)
+      }
+    }
+    append('"')
+  }
+}
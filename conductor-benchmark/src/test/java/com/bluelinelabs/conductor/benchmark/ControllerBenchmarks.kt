@@ -0,0 +1,124 @@
+package com.bluelinelabs.conductor.benchmark
+
+import android.os.Bundle
+import android.os.Parcel
+import com.bluelinelabs.conductor.Controller
+import com.bluelinelabs.conductor.ControllerFactory
+import com.bluelinelabs.conductor.Router
+import org.junit.AfterClass
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+/**
+ * Benchmarks for creating Controllers, both directly and through restoration. Results are written to
+ * `conductor-benchmark/build/benchmark-results/controller-benchmarks.json`.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ControllerBenchmarks {
+
+  private val router: Router = Robolectric.buildActivity(BenchmarkActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Test
+  fun createController() {
+    runner.run(
+      "createController",
+      operation = { runner.consume(BenchmarkController()) }
+    ).report()
+  }
+
+  @Test
+  fun createControllerWithArgs() {
+    runner.run(
+      "createControllerWithArgs",
+      setup = { Bundle().apply { putString(KEY_ARG, "arg") } },
+      operation = { runner.consume(BenchmarkController(it)) }
+    ).report()
+  }
+
+  @Test
+  fun instantiateController() {
+    val factory = ControllerFactory()
+    runner.run(
+      "instantiateController",
+      setup = { Bundle().apply { putString(KEY_ARG, "arg") } },
+      operation = { runner.consume(factory.instantiate(BenchmarkController::class.java.name, it)) }
+    ).report()
+  }
+
+  /**
+   * Baseline for [instantiateController], which looks the constructor up again for every instance like restoring
+   * used to before constructors were cached.
+   */
+  @Test
+  fun instantiateControllerUncached() {
+    runner.run(
+      "instantiateControllerUncached",
+      setup = { Bundle().apply { putString(KEY_ARG, "arg") } },
+      operation = { runner.consume(instantiateUncached(BenchmarkController::class.java.name, it)) }
+    ).report()
+  }
+
+  @Test
+  fun restoreController() {
+    router.setRoot(BenchmarkController().asTransaction())
+    val savedState = Bundle().also { router.saveInstanceState(it) }
+
+    runner.run(
+      "restoreController",
+      setup = {
+        router.setBackstack(emptyList(), null)
+        savedState.parcelRoundTrip()
+      },
+      operation = { router.restoreInstanceState(it) }
+    ).report()
+  }
+
+  private fun instantiateUncached(className: String, args: Bundle): Controller {
+    val cls = Class.forName(className, false, ControllerBenchmarks::class.java.classLoader)
+    val constructors = cls.constructors
+    val bundleConstructor = constructors.firstOrNull {
+      it.parameterTypes.size == 1 && it.parameterTypes[0] == Bundle::class.java
+    }
+    args.classLoader = cls.classLoader
+    return if (bundleConstructor != null) {
+      bundleConstructor.newInstance(args) as Controller
+    } else {
+      constructors.first { it.parameterTypes.isEmpty() }.newInstance() as Controller
+    }
+  }
+
+  private fun Bundle.parcelRoundTrip(): Bundle {
+    val parcel = Parcel.obtain()
+    try {
+      parcel.writeBundle(this)
+      parcel.setDataPosition(0)
+      return parcel.readBundle(ControllerBenchmarks::class.java.classLoader)!!
+    } finally {
+      parcel.recycle()
+    }
+  }
+
+  private fun BenchmarkResult.report() {
+    println(this)
+  }
+
+  companion object {
+    private const val KEY_ARG = "ControllerBenchmarks.arg"
+
+    private val runner = BenchmarkRunner()
+
+    @JvmStatic
+    @AfterClass
+    fun writeResults() {
+      runner.writeResults(File(BenchmarkRunner.outputDir, "controller-benchmarks.json"))
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.bluelinelabs.conductor.benchmark
+
+import android.os.Bundle
+import android.os.Looper
+import android.os.Parcel
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.Controller
+import com.bluelinelabs.conductor.Router
+import org.junit.AfterClass
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.io.File
+
+/**
+ * Benchmarks for the Router operations apps hit most often. Run with
+ * `./gradlew :conductor-benchmark:testDebugUnitTest -Pbenchmark`. Results are printed and written as JSON to
+ * `conductor-benchmark/build/benchmark-results/router-benchmarks.json` so they can be compared across runs.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class RouterBenchmarks {
+
+  private val router = Robolectric.buildActivity(BenchmarkActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Before
+  fun setup() {
+    // Let the router see its container as fully attached so changes run immediately.
+    shadowOf(Looper.getMainLooper()).idle()
+    router.setRoot(BenchmarkController().asTransaction())
+  }
+
+  @Test
+  fun pushController() {
+    runner.run(
+      "pushController",
+      setup = {
+        router.popToRoot()
+        BenchmarkController().asTransaction()
+      },
+      operation = { router.pushController(it) }
+    ).report()
+  }
+
+  @Test
+  fun popToRoot() {
+    for (depth in BACKSTACK_SIZES) {
+      runner.run(
+        "popToRoot",
+        mapOf("backstackSize" to depth),
+        setup = { router.setBackstack(List(depth) { BenchmarkController().asTransaction() }, null) },
+        operation = { router.popToRoot() }
+      ).report()
+    }
+  }
+
+  @Test
+  fun setBackstack() {
+    for (size in BACKSTACK_SIZES) {
+      runner.run(
+        "setBackstack",
+        mapOf("backstackSize" to size),
+        setup = { List(size) { BenchmarkController().asTransaction() } },
+        operation = { router.setBackstack(it, null) }
+      ).report()
+    }
+  }
+
+  @Test
+  fun getControllerWithInstanceId() {
+    for (depth in TREE_DEPTHS) {
+      val deepest = buildTree(depth, TREE_WIDTH)
+
+      runner.run(
+        "getControllerWithInstanceId",
+        mapOf("treeDepth" to depth, "routerBackstackSize" to TREE_WIDTH),
+        operation = { runner.consume(router.getControllerWithInstanceId(deepest.instanceId)) }
+      ).report()
+    }
+  }
+
+  @Test
+  fun saveInstanceState() {
+    for (size in BACKSTACK_SIZES) {
+      router.setBackstack(List(size) { BenchmarkController().asTransaction() }, null)
+
+      runner.run(
+        "saveInstanceState",
+        mapOf("backstackSize" to size),
+        operation = { router.saveInstanceState(Bundle()) }
+      ).report()
+    }
+  }
+
+  @Test
+  fun restoreInstanceState() {
+    for (size in BACKSTACK_SIZES) {
+      router.setBackstack(List(size) { BenchmarkController().asTransaction() }, null)
+      val savedState = Bundle().also { router.saveInstanceState(it) }
+
+      runner.run(
+        "restoreInstanceState",
+        mapOf("backstackSize" to size),
+        setup = {
+          router.setBackstack(emptyList(), null)
+          // Restoring consumes the saved state, so each iteration gets its own copy as if it came from a new process.
+          savedState.parcelRoundTrip()
+        },
+        operation = { router.restoreInstanceState(it) }
+      ).report()
+    }
+  }
+
+  // Builds a tree of nested child routers with `width` Controllers in each backstack and returns the Controller
+  // at the bottom of the deepest backstack.
+  private fun buildTree(depth: Int, width: Int): Controller {
+    var currentRouter: Router = router
+    lateinit var deepest: Controller
+
+    repeat(depth) {
+      val controllers = List(width) { BenchmarkController() }
+      currentRouter.setBackstack(controllers.map { it.asTransaction() }, null)
+      shadowOf(Looper.getMainLooper()).idle()
+
+      deepest = controllers.first()
+      val top = controllers.last()
+      currentRouter = top.getChildRouter(top.view as ViewGroup)
+    }
+
+    return deepest
+  }
+
+  private fun Bundle.parcelRoundTrip(): Bundle {
+    val parcel = Parcel.obtain()
+    try {
+      parcel.writeBundle(this)
+      parcel.setDataPosition(0)
+      return parcel.readBundle(RouterBenchmarks::class.java.classLoader)!!
+    } finally {
+      parcel.recycle()
+    }
+  }
+
+  private fun BenchmarkResult.report() {
+    println(this)
+  }
+
+  companion object {
+    private val BACKSTACK_SIZES = listOf(1, 10, 100)
+    private val TREE_DEPTHS = listOf(1, 5, 10)
+    private const val TREE_WIDTH = 10
+
+    private val runner = BenchmarkRunner()
+
+    @JvmStatic
+    @AfterClass
+    fun writeResults() {
+      runner.writeResults(File(BenchmarkRunner.outputDir, "router-benchmarks.json"))
+    }
+  }
+}
@@ -7,20 +7,46 @@ internal class Backstack : Iterable<RouterTransaction> {
 
   private val backstack: Deque<RouterTransaction> = ArrayDeque()
 
+  // Indexes used to avoid walking the backstack for lookups. Tags aren't required to be unique, so
+  // the tag index always points at the top-most transaction using a given tag and keeps a count
+  // so we only have to re-scan the backstack when a duplicated tag is removed.
+  private val transactionsByInstanceId = HashMap<String, RouterTransaction>()
+  private val transactionsByTag = HashMap<String, RouterTransaction>()
+  private val tagCounts = HashMap<String, Int>()
+
   val isEmpty: Boolean get() = backstack.isEmpty()
 
   val size: Int get() = backstack.size
 
+  /**
+   * Whether transactions have been added or removed since the last call to [saveInstanceState].
+   */
+  var hasUnsavedChanges = true
+    private set
+
   fun root(): RouterTransaction? = backstack.lastOrNull()
 
   override fun iterator(): MutableIterator<RouterTransaction> {
-    return backstack.iterator()
+    val iterator = backstack.iterator()
+    return object : MutableIterator<RouterTransaction> {
+      private var current: RouterTransaction? = null
+
+      override fun hasNext() = iterator.hasNext()
+
+      override fun next(): RouterTransaction = iterator.next().also { current = it }
+
+      override fun remove() {
+        iterator.remove()
+        current?.let { onRemoved(it) }
+        current = null
+      }
+    }
   }
 
   fun reverseIterator(): Iterator<RouterTransaction> = backstack.descendingIterator()
 
   fun popTo(transaction: RouterTransaction): List<RouterTransaction> {
-    if (transaction in backstack) {
+    if (transactionsByInstanceId[transaction.instanceId] === transaction) {
       val popped: MutableList<RouterTransaction> = ArrayList()
       while (backstack.peek() != transaction) {
         val poppedTransaction = pop()
@@ -34,6 +60,8 @@ internal class Backstack : Iterable<RouterTransaction> {
 
   fun pop(): RouterTransaction {
     return backstack.pop().also {
+      onRemoved(it)
+      // Controllers that were restored lazily are still created here so that they get their onDestroy call.
       it.controller.destroy()
     }
   }
@@ -42,6 +70,7 @@ internal class Backstack : Iterable<RouterTransaction> {
 
   fun push(transaction: RouterTransaction) {
     backstack.push(transaction)
+    onAdded(transaction)
   }
 
   fun popAll(): List<RouterTransaction> {
@@ -53,37 +82,90 @@ internal class Backstack : Iterable<RouterTransaction> {
   }
 
   fun setBackstack(backstack: List<RouterTransaction>) {
-    this.backstack.clear()
+    clear()
     backstack.forEach { transaction ->
-      this.backstack.push(transaction)
+      push(transaction)
     }
   }
 
   operator fun contains(controller: Controller): Boolean {
-    return backstack.any {
-      it.controller == controller
-    }
+    return transactionsByInstanceId[controller.instanceId]?.createdController === controller
   }
 
+  fun findByInstanceId(instanceId: String): RouterTransaction? = transactionsByInstanceId[instanceId]
+
+  fun findByTag(tag: String): RouterTransaction? = transactionsByTag[tag]
+
   fun saveInstanceState(outState: Bundle) {
     val entryBundles = ArrayList<Bundle>(backstack.size)
     backstack.mapTo(entryBundles) {
       it.saveInstanceState()
     }
     outState.putParcelableArrayList(KEY_ENTRIES, entryBundles)
+    hasUnsavedChanges = false
   }
 
-  fun restoreInstanceState(savedInstanceState: Bundle) {
+  /**
+   * Restores the transactions saved by [saveInstanceState]. If [lazy] is true, their Controllers aren't created
+   * until they're first used.
+   */
+  fun restoreInstanceState(savedInstanceState: Bundle, lazy: Boolean) {
     val entryBundles = savedInstanceState.getParcelableArrayList<Bundle?>(KEY_ENTRIES)
     if (entryBundles != null) {
       entryBundles.reverse()
       for (transactionBundle in entryBundles) {
-        backstack.push(RouterTransaction(transactionBundle!!))
+        push(RouterTransaction(transactionBundle!!, lazy))
+      }
+    }
+  }
+
+  private fun clear() {
+    hasUnsavedChanges = true
+    backstack.clear()
+    transactionsByInstanceId.clear()
+    transactionsByTag.clear()
+    tagCounts.clear()
+  }
+
+  private fun onAdded(transaction: RouterTransaction) {
+    hasUnsavedChanges = true
+    transactionsByInstanceId[transaction.instanceId] = transaction
+
+    transaction.tag()?.let { tag ->
+      transactionsByTag[tag] = transaction
+      tagCounts[tag] = (tagCounts[tag] ?: 0) + 1
+    }
+  }
+
+  private fun onRemoved(transaction: RouterTransaction) {
+    hasUnsavedChanges = true
+    val instanceId = transaction.instanceId
+    if (transactionsByInstanceId[instanceId] === transaction) {
+      transactionsByInstanceId.remove(instanceId)
+    }
+
+    transaction.tag()?.let { tag ->
+      val remaining = (tagCounts[tag] ?: 1) - 1
+      if (remaining > 0) {
+        tagCounts[tag] = remaining
+        if (transactionsByTag[tag] === transaction) {
+          backstack.firstOrNull { it.tag() == tag }?.let { transactionsByTag[tag] = it }
+        }
+      } else {
+        tagCounts.remove(tag)
+        transactionsByTag.remove(tag)
       }
     }
   }
 
   companion object {
     private const val KEY_ENTRIES = "Backstack.entries"
+
+    /**
+     * Returns the saved states of the transactions in a Bundle written by [saveInstanceState], from root to top.
+     */
+    fun transactionStates(savedInstanceState: Bundle): List<Bundle> {
+      return savedInstanceState.getParcelableArrayList<Bundle>(KEY_ENTRIES).orEmpty()
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.bluelinelabs.conductor
+
+import com.bluelinelabs.conductor.internal.ClassUtils
+
+/**
+ * Creates [ControllerChangeHandler]s as they're restored from saved state or copied. The default implementation
+ * uses the handler's default constructor through reflection. Apps can set a subclass on
+ * [Conductor.changeHandlerFactory] to create handlers directly, and call through to super for any class they don't
+ * handle.
+ *
+ * Change handlers are only required to have a default constructor while the default factory is in use.
+ */
+open class ChangeHandlerFactory {
+
+  /**
+   * Creates a new instance of the change handler with the passed class name. Its saved state is restored after it
+   * has been returned.
+   *
+   * @param className The fully qualified class name of the change handler being restored
+   */
+  open fun instantiate(className: String): ControllerChangeHandler {
+    return ClassUtils.newInstance<ControllerChangeHandler>(className)
+      ?: throw IllegalArgumentException("No class name was saved for this change handler.")
+  }
+}
@@ -0,0 +1,39 @@
+package com.bluelinelabs.conductor
+
+import androidx.annotation.UiThread
+
+/**
+ * Decides when the changes that a [Router] has queued up are run. Routers queue changes while their container isn't
+ * fully attached yet, ex: when several Controllers are pushed while an Activity is starting from a deep link. Without
+ * a scheduler, all of them are run back to back as soon as the container is ready. Set one through
+ * [Router.setChangeScheduler].
+ *
+ * While a Router has a scheduler, a queued push that would be immediately covered by a later queued push is collapsed
+ * into it, so that the Controller in between stays in the backstack without its view ever being created.
+ */
+@UiThread
+interface ChangeScheduler {
+
+  /**
+   * Called when [queue] has changes that are ready to run. The scheduler must run all of them on the main thread
+   * through [PendingChangeQueue.runNext]. This may be called again for a queue that's already been scheduled.
+   */
+  fun schedule(queue: PendingChangeQueue)
+
+  /**
+   * A Router's queued changes, in the order they have to be run in.
+   */
+  @UiThread
+  interface PendingChangeQueue {
+
+    /**
+     * Whether there are changes left to run. Changes are dropped if the Router's host is detached in the meantime.
+     */
+    fun hasNext(): Boolean
+
+    /**
+     * Runs the next change. Changes queued up while it runs are added to the end of this queue.
+     */
+    fun runNext()
+  }
+}
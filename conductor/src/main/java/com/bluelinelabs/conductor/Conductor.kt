@@ -6,6 +6,7 @@ import android.view.ViewGroup
 import androidx.annotation.UiThread
 import com.bluelinelabs.conductor.internal.LifecycleHandler
 import com.bluelinelabs.conductor.internal.ensureMainThread
+import java.util.concurrent.Executor
 
 /**
  * Conductor will create a [Router] that has been initialized for your Activity and containing ViewGroup.
@@ -22,11 +23,87 @@ import com.bluelinelabs.conductor.internal.ensureMainThread
 @UiThread
 object Conductor {
   
+  /**
+   * The size, in bytes, that the state saved by all [Router]s in an Activity should be kept under. When a save goes
+   * over this budget, the largest [Controller] view states and saved states are written to files in the app's private
+   * storage instead, and are read back when their Controllers are restored. This helps to avoid
+   * TransactionTooLargeExceptions for apps with large view hierarchies. Defaults to 0, which disables the budget.
+   *
+   * Unless a [stateSerializationExecutor] is set, measuring the saved state and writing these files happen on the
+   * main thread, inside the Activity's onSaveInstanceState. A save that goes over the budget will then block the main
+   * thread on disk I/O, so apps with a budget that is regularly exceeded should also set an Executor.
+   */
   @JvmStatic
-  fun attachRouter(activity: Activity, container: ViewGroup, savedInstanceState: Bundle?): Router {
+  var savedStateSizeBudget: Int = 0
+    set(value) {
+      require(value >= 0) { "The saved state size budget can't be negative." }
+      field = value
+    }
+
+  /**
+   * The Executor that an Activity's saved state is flattened on, or null to do all of the saving on the main thread.
+   * When set, [Router]s and [Controller]s still save their state into Bundles on the main thread, but spilling to
+   * disk (see [savedStateSizeBudget]) and turning those Bundles into bytes happen on this Executor instead. The main
+   * thread only waits for this work if the framework asks for the bytes before it's done. Any Parcelables that apps
+   * put into saved state must not be modified after they've been saved. Defaults to null.
+   */
+  @JvmStatic
+  var stateSerializationExecutor: Executor? = null
+
+  /**
+   * Whether [Router]s should wait to re-create restored [Controller]s until they're needed. When enabled, only the
+   * visible Controllers are created on restoration. The others are kept as their saved state until they become
+   * visible, are looked up through [Router.getControllerWithInstanceId] or [Router.getControllerWithTag], or receive
+   * a result. This can greatly speed up restoring deep backstacks. Code that walks a Router's created Controllers,
+   * rather than its [Router.getBackstack], won't see the ones that are still waiting. Defaults to false.
+   */
+  @JvmStatic
+  var lazyRestoreEnabled: Boolean = false
+
+  /**
+   * Whether [Controller]s should refill the Bundles from their previous save when they're saved again, rather than
+   * building new ones. This cuts down on allocations when saving large trees, but means that any saved state Bundle
+   * handed out by Conductor (including the ones passed to [Controller.onSaveInstanceState],
+   * [Controller.onSaveViewState] and [Controller.LifecycleListener]s) is overwritten by that Controller's next save,
+   * so nothing should hold on to one after it has been written out. Defaults to false.
+   */
+  @JvmStatic
+  var savedStateBundleReuseEnabled: Boolean = false
+
+  /**
+   * The tracer that Conductor's main thread work should be reported to, ex: [ConductorTracer.SystemTrace] to have it show
+   * up in system traces. Defaults to null, in which case tracing costs nothing more than a null check.
+   */
+  @JvmStatic
+  var tracer: ConductorTracer? = null
+
+  /**
+   * The factory used to create [Controller]s when they're restored.
+   */
+  @JvmStatic
+  var controllerFactory: ControllerFactory = ControllerFactory()
+
+  /**
+   * The factory used to create [ControllerChangeHandler]s when they're restored or copied.
+   */
+  @JvmStatic
+  var changeHandlerFactory: ChangeHandlerFactory = ChangeHandlerFactory()
+
+  @JvmStatic
+  @JvmOverloads
+  fun attachRouter(
+    activity: Activity,
+    container: ViewGroup,
+    savedInstanceState: Bundle?,
+    snapshotStore: RouterSnapshotStore? = null
+  ): Router {
     ensureMainThread()
-    return LifecycleHandler.install(activity)
-      .getRouter(container, savedInstanceState)
-      .also { it.rebindIfNeeded() }
+    val router = LifecycleHandler.install(activity).getRouter(container, savedInstanceState)
+    if (snapshotStore != null && savedInstanceState == null && !router.hasRootController()) {
+      snapshotStore.restore(router)
+    }
+    router.rebindIfNeeded()
+    snapshotStore?.attach(router)
+    return router
   }
 }
@@ -0,0 +1,40 @@
+package com.bluelinelabs.conductor
+
+import android.os.Build
+import android.os.Trace
+
+/**
+ * Receives named sections around Conductor's main thread work, such as inflating, attaching, detaching and saving
+ * [Controller]s, so that it shows up in profiling tools. Section names include the class name of the Controller
+ * they're for. Set one through [Conductor.tracer].
+ */
+interface ConductorTracer {
+
+  fun beginSection(name: String)
+
+  /**
+   * Ends the section most recently begun on this thread.
+   */
+  fun endSection()
+
+  /**
+   * Writes sections to the system trace through [android.os.Trace], where they can be seen in Perfetto and Systrace.
+   * Sections are dropped on versions of Android that don't support them.
+   */
+  object SystemTrace : ConductorTracer {
+    // The system trace drops any section with a longer name.
+    private const val MAX_SECTION_NAME_LENGTH = 127
+
+    override fun beginSection(name: String) {
+      if (Build.VERSION.SDK_INT >= 18) {
+        Trace.beginSection(name.take(MAX_SECTION_NAME_LENGTH))
+      }
+    }
+
+    override fun endSection() {
+      if (Build.VERSION.SDK_INT >= 18) {
+        Trace.endSection()
+      }
+    }
+  }
+}
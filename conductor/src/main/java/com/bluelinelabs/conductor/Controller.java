@@ -20,13 +20,19 @@ import android.view.ViewGroup;
 import androidx.annotation.IdRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
 
+import com.bluelinelabs.conductor.internal.AsyncInflation;
 import com.bluelinelabs.conductor.internal.ClassUtils;
 import com.bluelinelabs.conductor.internal.OwnViewTreeLifecycleAndRegistry;
 import com.bluelinelabs.conductor.internal.RouterRequiringFunc;
+import com.bluelinelabs.conductor.internal.SavedStateSpiller;
+import com.bluelinelabs.conductor.internal.ThreadUtils;
+import com.bluelinelabs.conductor.internal.Tracing;
 import com.bluelinelabs.conductor.internal.ViewAttachHandler;
 import com.bluelinelabs.conductor.internal.ViewAttachHandler.ViewAttachListener;
 
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
@@ -34,7 +40,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * A Controller manages portions of the UI. It is similar to an Activity or Fragment in that it manages its
@@ -44,24 +55,43 @@ import java.util.UUID;
  */
 public abstract class Controller {
 
-    private static final String KEY_CLASS_NAME = "Controller.className";
-    private static final String KEY_VIEW_STATE = "Controller.viewState";
-    private static final String KEY_CHILD_ROUTERS = "Controller.childRouters";
-    private static final String KEY_SAVED_STATE = "Controller.savedState";
-    private static final String KEY_INSTANCE_ID = "Controller.instanceId";
+    static final String KEY_CLASS_NAME = "Controller.className";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String KEY_VIEW_STATE = "Controller.viewState";
+    static final String KEY_CHILD_ROUTERS = "Controller.childRouters";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String KEY_SAVED_STATE = "Controller.savedState";
+    static final String KEY_INSTANCE_ID = "Controller.instanceId";
     private static final String KEY_TARGET_INSTANCE_ID = "Controller.target.instanceId";
-    private static final String KEY_ARGS = "Controller.args";
-    private static final String KEY_NEEDS_ATTACH = "Controller.needsAttach";
+    static final String KEY_ARGS = "Controller.args";
+    static final String KEY_NEEDS_ATTACH = "Controller.needsAttach";
     private static final String KEY_REQUESTED_PERMISSIONS = "Controller.requestedPermissions";
-    private static final String KEY_OVERRIDDEN_PUSH_HANDLER = "Controller.overriddenPushHandler";
-    private static final String KEY_OVERRIDDEN_POP_HANDLER = "Controller.overriddenPopHandler";
+    static final String KEY_OVERRIDDEN_PUSH_HANDLER = "Controller.overriddenPushHandler";
+    static final String KEY_OVERRIDDEN_POP_HANDLER = "Controller.overriddenPopHandler";
     private static final String KEY_VIEW_STATE_HIERARCHY = "Controller.viewState.hierarchy";
     static final String KEY_VIEW_STATE_BUNDLE = "Controller.viewState.bundle";
     private static final String KEY_RETAIN_VIEW_MODE = "Controller.retainViewMode";
 
+    private static final LifecycleListener[] EMPTY_LIFECYCLE_LISTENERS = new LifecycleListener[0];
+
+    private static final int CONSTRUCTOR_NONE = 0;
+    private static final int CONSTRUCTOR_BUNDLE = 1;
+    private static final int CONSTRUCTOR_DEFAULT = 2;
+
+    // The constructor each Controller class is restored with, so that its constructors only have to be scanned
+    // once. Constructors refer to their classes, so they're only held softly. Otherwise they would keep their
+    // classes (and ClassLoaders) from ever being collected.
+    private static final Map<Class<?>, ResolvedConstructor> RESOLVED_CONSTRUCTORS = new WeakHashMap<>();
+
+    // How many saves for something other than the host Activity are in progress, ex: a RouterSnapshotStore. Views
+    // can still change after one of these, so they don't count as saved and are saved again before being destroyed.
+    static int transientSaveDepth;
+
     private final Bundle args;
 
     Bundle viewState;
+    // Set when the view state was written to disk to save space, until it's read back when it's first needed.
+    private String spilledViewStatePath;
     private Bundle savedInstanceState;
     boolean isBeingDestroyed;
     private boolean destroyed;
@@ -79,53 +109,77 @@ public abstract class Controller {
     private boolean attachedToUnownedParent;
     private boolean awaitingParentAttach;
     private boolean hasSavedViewState;
+    private boolean savedStateCachingEnabled;
+    private boolean savedStateDirty = true;
+    private Bundle cachedInstanceState;
+    // The Bundles built by the last saves, which are refilled by the next ones. These are only kept while saved state
+    // Bundle reuse is enabled, as they would otherwise hold on to the Controller's whole saved state for nothing.
+    private Bundle lastInstanceState;
+    private Bundle lastSavedState;
+    private Bundle lastViewState;
+    private Bundle lastViewStateBundle;
+    // The Bundle being written while LifecycleListeners are told about a save, so that they can measure it.
+    private Bundle instanceStateBeingSaved;
     boolean isDetachFrozen;
     private ControllerChangeHandler overriddenPushHandler;
     private ControllerChangeHandler overriddenPopHandler;
     private RetainViewMode retainViewMode = RetainViewMode.RELEASE_DETACH;
     private ViewAttachHandler viewAttachHandler;
     private final List<ControllerHostedRouter> childRouters = new ArrayList<>();
-    private final List<LifecycleListener> lifecycleListeners = new ArrayList<>();
+    // Copy-on-write so that dispatching lifecycle events doesn't need to allocate, while still letting listeners
+    // add or remove themselves mid-dispatch. Every dispatch loop reads the field once and works on that snapshot.
+    private LifecycleListener[] lifecycleListeners = EMPTY_LIFECYCLE_LISTENERS;
     private final ArrayList<String> requestedPermissions = new ArrayList<>();
     private final ArrayList<RouterRequiringFunc> onRouterSetListeners = new ArrayList<>();
     private WeakReference<View> destroyedView;
     private boolean isPerformingExitTransition;
     private boolean isContextAvailable;
+    private boolean asyncInflationEnabled;
+    private PendingInflation pendingInflation;
+    private ControllerViewPool viewPool;
+    ControllerChangeHandler inProgressChangeHandler;
+    boolean inProgressChangeIsPush;
 
     @NonNull
     static Controller newInstance(@NonNull Bundle bundle) {
         final String className = bundle.getString(KEY_CLASS_NAME);
-        //noinspection ConstantConditions
-        Class cls = ClassUtils.classForName(className, false);
-        Constructor[] constructors = cls.getConstructors();
-        Constructor bundleConstructor = getBundleConstructor(constructors);
-
         Bundle args = bundle.getBundle(KEY_ARGS);
-        if (args != null) {
-            args.setClassLoader(cls.getClassLoader());
-        }
 
         Controller controller;
         try {
-            if (bundleConstructor != null) {
-                controller = (Controller) bundleConstructor.newInstance(args);
-            } else {
-                //noinspection ConstantConditions
-                controller = (Controller) getDefaultConstructor(constructors).newInstance();
-
-                // Restore the args that existed before the last process death
-                if (args != null) {
-                    controller.args.putAll(args);
-                }
-            }
+            //noinspection ConstantConditions
+            controller = Conductor.getControllerFactory().instantiate(className, args);
         } catch (Exception e) {
             throw new RuntimeException("An exception occurred while creating a new instance of " + className + ". " + e.getMessage(), e);
         }
 
+        // Restore the args that existed before the last process death
+        if (args != null && controller.args != args) {
+            controller.args.putAll(args);
+        }
+
         controller.restoreInstanceState(bundle);
         return controller;
     }
 
+    @NonNull
+    static Controller instantiate(@NonNull String className, @Nullable Bundle args) throws Exception {
+        Class<?> cls = ClassUtils.classForName(className, false);
+        //noinspection ConstantConditions
+        ResolvedConstructor resolvedConstructor = resolveConstructor(cls);
+        Constructor<?> constructor = resolvedConstructor.get(cls);
+
+        if (args != null) {
+            args.setClassLoader(cls.getClassLoader());
+        }
+
+        if (resolvedConstructor.kind == CONSTRUCTOR_BUNDLE) {
+            return (Controller) constructor.newInstance(args);
+        } else {
+            return (Controller) constructor.newInstance();
+        }
+    }
+
     /**
      * Convenience constructor for use when no arguments are needed.
      */
@@ -249,6 +303,7 @@ public abstract class Controller {
                 childRouter = new ControllerHostedRouter(container.getId(), tag, boundToHostContainerId);
                 childRouter.setHostContainer(this, container);
                 childRouters.add(childRouter);
+                markSavedStateDirty();
 
                 if (isPerformingExitTransition) {
                     childRouter.setDetachFrozen(true);
@@ -270,6 +325,7 @@ public abstract class Controller {
      */
     public final void removeChildRouter(@NonNull Router childRouter) {
         if ((childRouter instanceof ControllerHostedRouter) && childRouters.remove(childRouter)) {
+            markSavedStateDirty();
             childRouter.destroy(true);
         }
     }
@@ -352,19 +408,15 @@ public abstract class Controller {
     }
 
     /**
-     * Returns the Controller with the given instance id or {@code null} if no such Controller
-     * exists. May return the Controller itself or a matching descendant
+     * Returns the descendant Controller with the given instance id or {@code null} if no such
+     * Controller exists in any of this Controller's child Routers.
      *
      * @param instanceId The instance ID being searched for
      */
     @Nullable
-    final Controller findController(@NonNull String instanceId) {
-        if (this.instanceId.equals(instanceId)) {
-            return this;
-        }
-
+    final Controller findChildController(@NonNull String instanceId) {
         for (Router router : childRouters) {
-            Controller matchingChild = router.getControllerWithInstanceId(instanceId);
+            Controller matchingChild = router.findControllerWithInstanceId(instanceId);
             if (matchingChild != null) {
                 return matchingChild;
             }
@@ -395,6 +447,7 @@ public abstract class Controller {
         }
 
         targetInstanceId = target != null ? target.getInstanceId() : null;
+        markSavedStateDirty();
     }
 
     /**
@@ -420,6 +473,28 @@ public abstract class Controller {
     protected void onDestroyView(@NonNull View view) {
     }
 
+    /**
+     * Called when this Controller's View is being handed to its {@link ControllerViewPool} after it has been
+     * destroyed. This should be overridden to clear any state from the View that shouldn't be seen by the next
+     * Controller to use it. Only called if a pool has been set with {@link #setViewPool(ControllerViewPool)}.
+     *
+     * @param view The View that is being recycled.
+     */
+    protected void onRecycleView(@NonNull View view) {
+    }
+
+    /**
+     * Called instead of {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)} when a View previously released
+     * by another instance of this Controller's class is being reused. This should be overridden to bind the View
+     * to this Controller.
+     *
+     * @param view           The recycled View.
+     * @param savedViewState A bundle for the view's state, which would have been created in {@link #onSaveViewState(View, Bundle)},
+     *                       or {@code null} if no saved state exists.
+     */
+    protected void onBindRecycledView(@NonNull View view, @Nullable Bundle savedViewState) {
+    }
+
     /**
      * Called when this Controller begins the process of being swapped in or out of the host view.
      *
@@ -615,6 +690,7 @@ public abstract class Controller {
     @TargetApi(Build.VERSION_CODES.M)
     public final void requestPermissions(@NonNull final String[] permissions, final int requestCode) {
         requestedPermissions.addAll(Arrays.asList(permissions));
+        markSavedStateDirty();
 
         executeWithRouter(new RouterRequiringFunc() {
             @Override
@@ -664,9 +740,9 @@ public abstract class Controller {
         });
 
         for (RouterTransaction transaction : childTransactions) {
-            Controller childController = transaction.controller();
+            Controller childController = transaction.getCreatedController();
 
-            if (childController.isAttached() && childController.getRouter().handleBack()) {
+            if (childController != null && childController.isAttached() && childController.getRouter().handleBack()) {
                 return true;
             }
         }
@@ -680,8 +756,10 @@ public abstract class Controller {
      * @param lifecycleListener The listener
      */
     public final void addLifecycleListener(@NonNull LifecycleListener lifecycleListener) {
-        if (!lifecycleListeners.contains(lifecycleListener)) {
-            lifecycleListeners.add(lifecycleListener);
+        if (indexOfLifecycleListener(lifecycleListener) < 0) {
+            LifecycleListener[] listeners = Arrays.copyOf(lifecycleListeners, lifecycleListeners.length + 1);
+            listeners[listeners.length - 1] = lifecycleListener;
+            lifecycleListeners = listeners;
         }
     }
 
@@ -691,7 +769,26 @@ public abstract class Controller {
      * @param lifecycleListener The listener to be removed
      */
     public final void removeLifecycleListener(@NonNull LifecycleListener lifecycleListener) {
-        lifecycleListeners.remove(lifecycleListener);
+        int index = indexOfLifecycleListener(lifecycleListener);
+        if (index >= 0) {
+            if (lifecycleListeners.length == 1) {
+                lifecycleListeners = EMPTY_LIFECYCLE_LISTENERS;
+            } else {
+                LifecycleListener[] listeners = new LifecycleListener[lifecycleListeners.length - 1];
+                System.arraycopy(lifecycleListeners, 0, listeners, 0, index);
+                System.arraycopy(lifecycleListeners, index + 1, listeners, index, listeners.length - index);
+                lifecycleListeners = listeners;
+            }
+        }
+    }
+
+    private int indexOfLifecycleListener(@NonNull LifecycleListener lifecycleListener) {
+        for (int i = 0; i < lifecycleListeners.length; i++) {
+            if (lifecycleListeners[i].equals(lifecycleListener)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -708,11 +805,84 @@ public abstract class Controller {
      */
     public void setRetainViewMode(@NonNull RetainViewMode retainViewMode) {
         this.retainViewMode = retainViewMode != null ? retainViewMode : RetainViewMode.RELEASE_DETACH;
+        markSavedStateDirty();
         if (this.retainViewMode == RetainViewMode.RELEASE_DETACH && !attached) {
             removeViewReference();
+        } else if (router != null) {
+            if (this.retainViewMode == RetainViewMode.RETAIN_DETACH_ADAPTIVE && !attached && view != null && view.getParent() == null) {
+                router.onViewRetained(this);
+            } else {
+                router.onRetainedViewReleased(this);
+            }
         }
     }
 
+    /**
+     * Returns the {@link ControllerViewPool} this Controller releases its views to, if any.
+     */
+    @Nullable
+    public final ControllerViewPool getViewPool() {
+        return viewPool;
+    }
+
+    /**
+     * Sets a {@link ControllerViewPool} this Controller should release its views to when they would otherwise be
+     * discarded, and take views from rather than inflating new ones. Controllers with child routers never release
+     * their views to the pool.
+     */
+    public final void setViewPool(@Nullable ControllerViewPool viewPool) {
+        this.viewPool = viewPool;
+    }
+
+    /**
+     * Returns whether or not this Controller's view will be created on a background thread.
+     */
+    public final boolean isAsyncInflationEnabled() {
+        return asyncInflationEnabled;
+    }
+
+    /**
+     * Sets whether or not this Controller's view should be created on a background thread when it is pushed. When
+     * enabled, {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)} is called on Conductor's inflater thread and
+     * the change handler only runs once the view is ready. Lifecycle callbacks other than onCreateView are still
+     * called on the main thread, in the usual order.
+     *
+     * Only enable this if this Controller's onCreateView does nothing other than build its view hierarchy, as it
+     * must not touch any state that is owned by the main thread.
+     */
+    public final void setAsyncInflationEnabled(boolean asyncInflationEnabled) {
+        this.asyncInflationEnabled = asyncInflationEnabled;
+    }
+
+    /**
+     * Returns whether or not this Controller reuses its previously saved state while it hasn't changed.
+     */
+    public final boolean isSavedStateCachingEnabled() {
+        return savedStateCachingEnabled;
+    }
+
+    /**
+     * Sets whether or not this Controller may reuse the Bundle it built during its last save instead of building a
+     * new one. Conductor keeps track of changes it makes itself, such as this Controller being attached or detached,
+     * but it can't see changes to the state written in {@link #onSaveInstanceState(Bundle)}, {@link #getArgs()}
+     * or by {@link LifecycleListener}s. Controllers that enable this must call {@link #markSavedStateDirty()}
+     * whenever any of those change while the Controller is detached.
+     */
+    public final void setSavedStateCachingEnabled(boolean savedStateCachingEnabled) {
+        this.savedStateCachingEnabled = savedStateCachingEnabled;
+        markSavedStateDirty();
+    }
+
+    /**
+     * Lets Conductor know that this Controller's saved state has changed since it was last saved, so that it will be
+     * rebuilt on the next save. Only needed if saved state caching has been enabled with
+     * {@link #setSavedStateCachingEnabled(boolean)}.
+     */
+    public final void markSavedStateDirty() {
+        savedStateDirty = true;
+        cachedInstanceState = null;
+    }
+
     /**
      * Returns the {@link ControllerChangeHandler} that should be used for pushing this Controller, or null
      * if the handler from the {@link RouterTransaction} should be used instead.
@@ -728,6 +898,7 @@ public abstract class Controller {
      */
     public void overridePushHandler(@Nullable ControllerChangeHandler overriddenPushHandler) {
         this.overriddenPushHandler = overriddenPushHandler;
+        markSavedStateDirty();
     }
 
     /**
@@ -745,6 +916,7 @@ public abstract class Controller {
      */
     public void overridePopHandler(@Nullable ControllerChangeHandler overriddenPopHandler) {
         this.overriddenPopHandler = overriddenPopHandler;
+        markSavedStateDirty();
     }
 
     /**
@@ -811,10 +983,12 @@ public abstract class Controller {
 
     final void setNeedsAttach(boolean needsAttach) {
         this.needsAttach = needsAttach;
+        markSavedStateDirty();
     }
 
     final void prepareForHostDetach() {
         needsAttach = needsAttach || attached;
+        markSavedStateDirty();
 
         for (ControllerHostedRouter router : childRouters) {
             router.prepareForHostDetach();
@@ -831,6 +1005,7 @@ public abstract class Controller {
 
     final void requestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         requestedPermissions.removeAll(Arrays.asList(permissions));
+        markSavedStateDirty();
         onRequestPermissionsResult(requestCode, permissions, grantResults);
     }
 
@@ -849,26 +1024,29 @@ public abstract class Controller {
         }
     }
 
+    // Only used for Controllers that were handed a Router ahead of time but never ended up in its backstack.
+    final void clearRouter() {
+        router = null;
+    }
+
     final void onContextAvailable() {
         final Context context = router.getActivity();
 
         if (context != null && !isContextAvailable) {
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.preContextAvailable(this);
             }
 
             isContextAvailable = true;
             onContextAvailable(context);
 
-            listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.postContextAvailable(this, context);
             }
         }
 
-        for (Router childRouter : childRouters) {
-            childRouter.onContextAvailable();
+        for (int i = 0; i < childRouters.size(); i++) {
+            childRouters.get(i).onContextAvailable();
         }
     }
 
@@ -878,16 +1056,14 @@ public abstract class Controller {
                 childRouter.onContextUnavailable(context);
             }
 
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.preContextUnavailable(this, context);
             }
 
             isContextAvailable = false;
             onContextUnavailable();
 
-            listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.postContextUnavailable(this);
             }
         }
@@ -949,6 +1125,18 @@ public abstract class Controller {
     }
 
     void attach(@NonNull View view) {
+        ConductorTracer tracer = Tracing.beginSection("Controller.attach", this);
+        try {
+            performAttach(view);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    private void performAttach(@NonNull View view) {
+        markSavedStateDirty();
         attachedToUnownedParent = router == null || view.getParent() != router.container;
         if (attachedToUnownedParent || isBeingDestroyed) {
             return;
@@ -961,10 +1149,13 @@ public abstract class Controller {
             awaitingParentAttach = false;
         }
 
+        if (retainViewMode == RetainViewMode.RETAIN_DETACH_ADAPTIVE) {
+            router.onRetainedViewReleased(this);
+        }
+
         hasSavedViewState = false;
 
-        List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
             lifecycleListener.preAttach(this, view);
         }
 
@@ -977,14 +1168,13 @@ public abstract class Controller {
             router.invalidateOptionsMenu();
         }
 
-        listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
             lifecycleListener.postAttach(Controller.this, view);
         }
 
         for (ControllerHostedRouter childRouter : childRouters) {
             for (RouterTransaction childTransaction : childRouter.backstack) {
-                if (childTransaction.controller().awaitingParentAttach) {
+                if (childTransaction.getCreatedController() != null && childTransaction.controller().awaitingParentAttach) {
                     childTransaction.controller().attach(childTransaction.controller().view);
                 }
             }
@@ -996,6 +1186,18 @@ public abstract class Controller {
     }
 
     void detach(@NonNull View view, boolean forceViewRefRemoval, boolean blockViewRefRemoval) {
+        ConductorTracer tracer = Tracing.beginSection("Controller.detach", this);
+        try {
+            performDetach(view, forceViewRefRemoval, blockViewRefRemoval);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    private void performDetach(@NonNull View view, boolean forceViewRefRemoval, boolean blockViewRefRemoval) {
+        markSavedStateDirty();
         if (!attachedToUnownedParent) {
             for (ControllerHostedRouter router : childRouters) {
                 router.prepareForHostDetach();
@@ -1006,8 +1208,7 @@ public abstract class Controller {
 
         if (attached) {
             if (!awaitingParentAttach) {
-                List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-                for (LifecycleListener lifecycleListener : listeners) {
+                for (LifecycleListener lifecycleListener : lifecycleListeners) {
                     lifecycleListener.preDetach(this, view);
                 }
 
@@ -1018,8 +1219,7 @@ public abstract class Controller {
                     router.invalidateOptionsMenu();
                 }
 
-                listeners = new ArrayList<>(lifecycleListeners);
-                for (LifecycleListener lifecycleListener : listeners) {
+                for (LifecycleListener lifecycleListener : lifecycleListeners) {
                     lifecycleListener.postDetach(this, view);
                 }
             } else {
@@ -1031,6 +1231,60 @@ public abstract class Controller {
 
         if (removeViewRef) {
             removeViewReference();
+        } else if (retainViewMode == RetainViewMode.RETAIN_DETACH_ADAPTIVE && router != null && this.view != null) {
+            retainDetachedView(this.view);
+        }
+    }
+
+    // Only views that have left their parent can be released later on, so views that stay in place while detached,
+    // such as when the Activity is stopped, don't count towards the retained view limit.
+    private void retainDetachedView(@NonNull final View view) {
+        if (view.getParent() == null) {
+            router.onViewRetained(this);
+        } else {
+            // Views are still attached to their parent while they're being detached from the window, so wait
+            // until they've actually been removed.
+            ThreadUtils.postOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (view.getParent() == null && !attached && Controller.this.view == view && router != null
+                            && retainViewMode == RetainViewMode.RETAIN_DETACH_ADAPTIVE) {
+                        router.onViewRetained(Controller.this);
+                    }
+                }
+            });
+        }
+    }
+
+    private void recycleView(@NonNull final View view) {
+        if (view.getParent() == null) {
+            if (destroyedView != null && destroyedView.get() == view) {
+                destroyedView = null;
+            }
+
+            onRecycleView(view);
+            viewPool.release(getClass(), view);
+        } else {
+            // Views are still attached to their parent while they're being detached from the window, so
+            // wait until they've actually been removed. Views that are still in use by an ongoing change
+            // at that point are simply dropped.
+            ThreadUtils.postOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (view.getParent() == null && viewPool != null && Controller.this.view != view) {
+                        recycleView(view);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Releases this Controller's view if it has one that isn't currently in use, such as a prewarmed view.
+     */
+    final void releaseDetachedView() {
+        if (view != null && !attached && !viewIsAttached && view.getParent() == null) {
+            removeViewReference();
         }
     }
 
@@ -1040,8 +1294,7 @@ public abstract class Controller {
                 saveViewState(view);
             }
 
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.preDestroyView(this, view);
             }
 
@@ -1055,19 +1308,27 @@ public abstract class Controller {
             viewAttachHandler = null;
             viewIsAttached = false;
 
+            if (retainViewMode == RetainViewMode.RETAIN_DETACH_ADAPTIVE && router != null) {
+                router.onRetainedViewReleased(this);
+            }
+
+            final View releasedView = view;
             if (isBeingDestroyed) {
                 destroyedView = new WeakReference<>(view);
             }
             view = null;
 
-            listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.postDestroyView(this);
             }
 
             for (ControllerHostedRouter childRouter : childRouters) {
                 childRouter.removeHost();
             }
+
+            if (viewPool != null && childRouters.isEmpty()) {
+                recycleView(releasedView);
+            }
         }
 
         if (isBeingDestroyed) {
@@ -1076,67 +1337,178 @@ public abstract class Controller {
     }
 
     final View inflate(@NonNull ViewGroup parent) {
+        ConductorTracer tracer = Tracing.beginSection("Controller.inflate", this);
+        try {
+            return performInflate(parent);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    @NonNull
+    private View performInflate(@NonNull ViewGroup parent) {
+        if (pendingInflation != null) {
+            finishInflation();
+        }
+
         if (view != null && view.getParent() != null && view.getParent() != parent) {
             detach(view, true, false);
             removeViewReference();
         }
 
         if (view == null) {
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.preCreateView(this);
             }
 
+            loadSpilledViewState();
             Bundle savedViewState = viewState == null ? null : viewState.getBundle(KEY_VIEW_STATE_BUNDLE);
-            view = onCreateView(LayoutInflater.from(parent.getContext()), parent, savedViewState);
-            if (view == parent) {
-                throw new IllegalStateException("Controller's onCreateView method returned the parent ViewGroup. Perhaps you forgot to pass false for LayoutInflater.inflate's attachToRoot parameter?");
+            View recycledView = acquireRecycledView(parent, savedViewState);
+            onViewCreated(parent, recycledView != null ? recycledView : onCreateView(LayoutInflater.from(parent.getContext()), parent, savedViewState));
+        } else {
+            restoreChildControllerHosts();
+        }
+
+        return view;
+    }
+
+    /**
+     * Returns whether or not this Controller's view should be created by {@link #inflateAsync(ViewGroup, Runnable)}
+     * rather than {@link #inflate(ViewGroup)}.
+     */
+    final boolean shouldInflateAsync() {
+        return asyncInflationEnabled && view == null && pendingInflation == null && !isBeingDestroyed;
+    }
+
+    final boolean isInflating() {
+        return pendingInflation != null;
+    }
+
+    /**
+     * Creates this Controller's view on Conductor's inflater thread. preCreateView is dispatched immediately,
+     * while postCreateView and the passed callback run on the main thread once the view is ready.
+     */
+    final void inflateAsync(@NonNull final ViewGroup parent, @NonNull Runnable onInflated) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
+            lifecycleListener.preCreateView(this);
+        }
+
+        loadSpilledViewState();
+        final Bundle savedViewState = viewState == null ? null : viewState.getBundle(KEY_VIEW_STATE_BUNDLE);
+        View recycledView = acquireRecycledView(parent, savedViewState);
+        if (recycledView != null) {
+            onViewCreated(parent, recycledView);
+            onInflated.run();
+            return;
+        }
+
+        final LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        final PendingInflation inflation = new PendingInflation(parent, onInflated, new Callable<View>() {
+            @Override
+            public View call() {
+                return onCreateView(inflater, parent, savedViewState);
             }
+        });
+        pendingInflation = inflation;
+
+        AsyncInflation.inflateInBackground(inflation, new Runnable() {
+            @Override
+            public void run() {
+                if (pendingInflation == inflation) {
+                    finishInflation();
+                }
+            }
+        });
+    }
+
+    /**
+     * Completes an in-progress {@link #inflateAsync(ViewGroup, Runnable)} call, blocking until the view has been
+     * created if needed, then runs its callback.
+     *
+     * @return Whether or not there was an inflation in progress
+     */
+    final boolean finishInflation() {
+        final PendingInflation inflation = pendingInflation;
+        if (inflation == null) {
+            return false;
+        }
+        pendingInflation = null;
 
-            listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
-                lifecycleListener.postCreateView(this, view);
+        View createdView;
+        try {
+            createdView = inflation.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + getClass().getSimpleName() + "'s view to be created.", e);
+        }
 
-            restoreViewState(view);
+        onViewCreated(inflation.parent, createdView);
+        inflation.onInflated.run();
+        return true;
+    }
 
-            if (!isBeingDestroyed) {
-                viewAttachHandler = new ViewAttachHandler(new ViewAttachListener() {
-                    @Override
-                    public void onAttached() {
-                        viewIsAttached = true;
-                        viewWasDetached = false;
-                        attach(view);
-                    }
+    @Nullable
+    private View acquireRecycledView(@NonNull ViewGroup parent, @Nullable Bundle savedViewState) {
+        View recycledView = viewPool != null ? viewPool.acquire(getClass(), parent.getContext()) : null;
+        if (recycledView != null) {
+            onBindRecycledView(recycledView, savedViewState);
+        }
+        return recycledView;
+    }
+
+    private void onViewCreated(@NonNull ViewGroup parent, @NonNull View createdView) {
+        if (createdView == parent) {
+            throw new IllegalStateException("Controller's onCreateView method returned the parent ViewGroup. Perhaps you forgot to pass false for LayoutInflater.inflate's attachToRoot parameter?");
+        }
+        view = createdView;
 
-                    @Override
-                    public void onDetached(boolean fromActivityStop) {
-                        viewIsAttached = false;
-                        viewWasDetached = true;
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
+            lifecycleListener.postCreateView(this, view);
+        }
+
+        restoreViewState(view);
+
+        if (!isBeingDestroyed) {
+            viewAttachHandler = new ViewAttachHandler(new ViewAttachListener() {
+                @Override
+                public void onAttached() {
+                    viewIsAttached = true;
+                    viewWasDetached = false;
+                    attach(view);
+                }
 
-                        if (!isDetachFrozen) {
-                            detach(view, false, fromActivityStop);
-                        }
+                @Override
+                public void onDetached(boolean fromActivityStop) {
+                    viewIsAttached = false;
+                    viewWasDetached = true;
+
+                    if (!isDetachFrozen) {
+                        detach(view, false, fromActivityStop);
                     }
+                }
 
-                    @Override
-                    public void onViewDetachAfterStop() {
-                        if (!isDetachFrozen) {
-                            detach(view, false, false);
-                        }
+                @Override
+                public void onViewDetachAfterStop() {
+                    if (!isDetachFrozen) {
+                        detach(view, false, false);
                     }
-                });
-                viewAttachHandler.listenForAttach(view);
-            }
-        } else {
-            restoreChildControllerHosts();
+                }
+            });
+            viewAttachHandler.listenForAttach(view);
         }
-
-        return view;
     }
 
     private void restoreChildControllerHosts() {
-        for (ControllerHostedRouter childRouter : childRouters) {
+        for (int i = 0; i < childRouters.size(); i++) {
+            ControllerHostedRouter childRouter = childRouters.get(i);
             if (!childRouter.hasHost()) {
                 View containerView = view.findViewById(childRouter.getHostId());
 
@@ -1154,8 +1526,7 @@ public abstract class Controller {
         }
 
         if (!destroyed) {
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.preDestroy(this);
             }
 
@@ -1165,8 +1536,11 @@ public abstract class Controller {
 
             parentController = null;
 
-            listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            if (router != null) {
+                router.unregisterController(this);
+            }
+
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.postDestroy(this);
             }
         }
@@ -1177,6 +1551,10 @@ public abstract class Controller {
     }
 
     private void destroy(boolean removeViews) {
+        if (pendingInflation != null && !ControllerChangeHandler.completeHandlerImmediately(this)) {
+            finishInflation();
+        }
+
         isBeingDestroyed = true;
 
         if (router != null) {
@@ -1196,24 +1574,40 @@ public abstract class Controller {
 
     private void saveViewState(@NonNull View view) {
         hasSavedViewState = true;
+        markSavedStateDirty();
+
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
+            lifecycleListener.preSaveViewState(this, view);
+        }
 
-        viewState = new Bundle(getClass().getClassLoader());
+        ClassLoader classLoader = getClass().getClassLoader();
+        viewState = obtainStateBundle(lastViewState, classLoader);
+        lastViewState = keepForReuse(viewState);
+        spilledViewStatePath = null;
 
         SparseArray<Parcelable> hierarchyState = new SparseArray<>();
         view.saveHierarchyState(hierarchyState);
         viewState.putSparseParcelableArray(KEY_VIEW_STATE_HIERARCHY, hierarchyState);
 
-        Bundle stateBundle = new Bundle(getClass().getClassLoader());
+        Bundle stateBundle = obtainStateBundle(lastViewStateBundle, classLoader);
+        lastViewStateBundle = keepForReuse(stateBundle);
         onSaveViewState(view, stateBundle);
         viewState.putBundle(KEY_VIEW_STATE_BUNDLE, stateBundle);
 
-        List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
             lifecycleListener.onSaveViewState(this, viewState);
         }
     }
 
+    private void loadSpilledViewState() {
+        if (spilledViewStatePath != null) {
+            viewState = SavedStateSpiller.load(spilledViewStatePath, getClass().getClassLoader());
+            spilledViewStatePath = null;
+        }
+    }
+
     private void restoreViewState(@NonNull View view) {
+        loadSpilledViewState();
         if (viewState != null) {
             view.restoreHierarchyState(viewState.getSparseParcelableArray(KEY_VIEW_STATE_HIERARCHY));
             Bundle savedViewState = viewState.getBundle(KEY_VIEW_STATE_BUNDLE);
@@ -1222,19 +1616,37 @@ public abstract class Controller {
 
             restoreChildControllerHosts();
 
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.onRestoreViewState(this, viewState);
             }
         }
     }
 
     final Bundle saveInstanceState() {
+        ConductorTracer tracer = Tracing.beginSection("Controller.saveInstanceState", this);
+        try {
+            return performSaveInstanceState();
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    @NonNull
+    private Bundle performSaveInstanceState() {
+        if (isSavedStateCurrent()) {
+            return cachedInstanceState;
+        }
+
         if (!hasSavedViewState && view != null) {
             saveViewState(view);
+            hasSavedViewState = transientSaveDepth == 0;
         }
+        loadSpilledViewState();
 
-        Bundle outState = new Bundle();
+        Bundle outState = obtainStateBundle(lastInstanceState, null);
+        lastInstanceState = keepForReuse(outState);
         outState.putString(KEY_CLASS_NAME, getClass().getName());
         outState.putBundle(KEY_VIEW_STATE, viewState);
         outState.putBundle(KEY_ARGS, args);
@@ -1259,24 +1671,79 @@ public abstract class Controller {
         }
         outState.putParcelableArrayList(KEY_CHILD_ROUTERS, childBundles);
 
-        Bundle savedState = new Bundle(getClass().getClassLoader());
+        Bundle savedState = obtainStateBundle(lastSavedState, getClass().getClassLoader());
+        lastSavedState = keepForReuse(savedState);
         onSaveInstanceState(savedState);
 
-        List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
-            lifecycleListener.onSaveInstanceState(this, savedState);
+        instanceStateBeingSaved = outState;
+        try {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
+                lifecycleListener.onSaveInstanceState(this, savedState);
+            }
+        } finally {
+            instanceStateBeingSaved = null;
         }
 
         outState.putBundle(KEY_SAVED_STATE, savedState);
 
+        if (savedStateCachingEnabled) {
+            cachedInstanceState = outState;
+            savedStateDirty = false;
+        }
+
         return outState;
     }
 
+    /**
+     * Returns the Bundle that {@link #saveInstanceState()} is writing, for listeners measuring it from
+     * {@link LifecycleListener#onSaveInstanceState(Controller, Bundle)}. Everything but the saved state Bundle has
+     * been added to it by then. Returns null outside of that callback.
+     */
+    @Nullable
+    final Bundle getInstanceStateBeingSaved() {
+        return instanceStateBeingSaved;
+    }
+
+    // Clears and returns the passed Bundle from an earlier save if Bundles are being reused, or creates a new one.
+    @NonNull
+    private static Bundle obtainStateBundle(@Nullable Bundle lastBundle, @Nullable ClassLoader classLoader) {
+        if (lastBundle != null && Conductor.getSavedStateBundleReuseEnabled()) {
+            lastBundle.clear();
+            return lastBundle;
+        }
+        return classLoader != null ? new Bundle(classLoader) : new Bundle();
+    }
+
+    // Returns the passed Bundle if it should be refilled by the next save, or null if it shouldn't be kept around.
+    @Nullable
+    private static Bundle keepForReuse(@NonNull Bundle bundle) {
+        return Conductor.getSavedStateBundleReuseEnabled() ? bundle : null;
+    }
+
+    /**
+     * Returns true if the Bundle from the last call to {@link #saveInstanceState()} can be handed out again. Attached
+     * Controllers are always saved from scratch, as their views may have changed at any time.
+     */
+    final boolean isSavedStateCurrent() {
+        if (!savedStateCachingEnabled || savedStateDirty || cachedInstanceState == null || attached) {
+            return false;
+        }
+
+        for (int i = 0, size = childRouters.size(); i < size; i++) {
+            if (!childRouters.get(i).isSavedStateCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void restoreInstanceState(@NonNull Bundle savedInstanceState) {
+        ClassLoader classLoader = getClass().getClassLoader();
         viewState = savedInstanceState.getBundle(KEY_VIEW_STATE);
         if (viewState != null) {
-            viewState.setClassLoader(getClass().getClassLoader());
+            viewState.setClassLoader(classLoader);
         }
+        spilledViewStatePath = savedInstanceState.getString(SavedStateSpiller.spilledKey(KEY_VIEW_STATE));
 
         instanceId = savedInstanceState.getString(KEY_INSTANCE_ID);
         targetInstanceId = savedInstanceState.getString(KEY_TARGET_INSTANCE_ID);
@@ -1295,8 +1762,12 @@ public abstract class Controller {
         }
 
         this.savedInstanceState = savedInstanceState.getBundle(KEY_SAVED_STATE);
+        String spilledSavedStatePath = savedInstanceState.getString(SavedStateSpiller.spilledKey(KEY_SAVED_STATE));
+        if (spilledSavedStatePath != null) {
+            this.savedInstanceState = SavedStateSpiller.load(spilledSavedStatePath, classLoader);
+        }
         if (this.savedInstanceState != null) {
-            this.savedInstanceState.setClassLoader(getClass().getClassLoader());
+            this.savedInstanceState.setClassLoader(classLoader);
         }
         performOnRestoreInstanceState();
     }
@@ -1305,8 +1776,7 @@ public abstract class Controller {
         if (savedInstanceState != null && router != null) {
             onRestoreInstanceState(savedInstanceState);
 
-            List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-            for (LifecycleListener lifecycleListener : listeners) {
+            for (LifecycleListener lifecycleListener : lifecycleListeners) {
                 lifecycleListener.onRestoreInstanceState(this, savedInstanceState);
             }
 
@@ -1317,15 +1787,14 @@ public abstract class Controller {
     final void changeStarted(@NonNull ControllerChangeHandler changeHandler, @NonNull ControllerChangeType changeType) {
         if (!changeType.isEnter) {
             isPerformingExitTransition = true;
-            for (ControllerHostedRouter router : childRouters) {
-                router.setDetachFrozen(true);
+            for (int i = 0; i < childRouters.size(); i++) {
+                childRouters.get(i).setDetachFrozen(true);
             }
         }
 
         onChangeStarted(changeHandler, changeType);
 
-        List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
             lifecycleListener.onChangeStart(this, changeHandler, changeType);
         }
     }
@@ -1333,15 +1802,14 @@ public abstract class Controller {
     final void changeEnded(@NonNull ControllerChangeHandler changeHandler, @NonNull ControllerChangeType changeType) {
         if (!changeType.isEnter) {
             isPerformingExitTransition = false;
-            for (ControllerHostedRouter router : childRouters) {
-                router.setDetachFrozen(false);
+            for (int i = 0; i < childRouters.size(); i++) {
+                childRouters.get(i).setDetachFrozen(false);
             }
         }
 
         onChangeEnded(changeHandler, changeType);
 
-        List<LifecycleListener> listeners = new ArrayList<>(lifecycleListeners);
-        for (LifecycleListener lifecycleListener : listeners) {
+        for (LifecycleListener lifecycleListener : lifecycleListeners) {
             lifecycleListener.onChangeEnd(this, changeHandler, changeType);
         }
 
@@ -1395,12 +1863,35 @@ public abstract class Controller {
     }
 
     private void ensureRequiredConstructor() {
-        Constructor[] constructors = getClass().getConstructors();
-        if (getBundleConstructor(constructors) == null && getDefaultConstructor(constructors) == null) {
+        // Custom factories are free to use other constructors.
+        if (Conductor.getControllerFactory().getClass() != ControllerFactory.class) {
+            return;
+        }
+
+        if (resolveConstructor(getClass()).kind == CONSTRUCTOR_NONE) {
             throw new RuntimeException(getClass() + " does not have a constructor that takes a Bundle argument or a default constructor. Controllers must have one of these in order to restore their states.");
         }
     }
 
+    @NonNull
+    private static ResolvedConstructor resolveConstructor(@NonNull Class<?> cls) {
+        synchronized (RESOLVED_CONSTRUCTORS) {
+            ResolvedConstructor resolvedConstructor = RESOLVED_CONSTRUCTORS.get(cls);
+            if (resolvedConstructor == null) {
+                Constructor[] constructors = cls.getConstructors();
+                Constructor constructor = getBundleConstructor(constructors);
+                if (constructor != null) {
+                    resolvedConstructor = new ResolvedConstructor(CONSTRUCTOR_BUNDLE, constructor);
+                } else {
+                    constructor = getDefaultConstructor(constructors);
+                    resolvedConstructor = new ResolvedConstructor(constructor != null ? CONSTRUCTOR_DEFAULT : CONSTRUCTOR_NONE, constructor);
+                }
+                RESOLVED_CONSTRUCTORS.put(cls, resolvedConstructor);
+            }
+            return resolvedConstructor;
+        }
+    }
+
     @Nullable
     private static Constructor getDefaultConstructor(@NonNull Constructor[] constructors) {
         for (Constructor constructor : constructors) {
@@ -1421,6 +1912,27 @@ public abstract class Controller {
         return null;
     }
 
+    private static final class ResolvedConstructor {
+        final int kind;
+        @NonNull private volatile SoftReference<Constructor<?>> constructor;
+
+        ResolvedConstructor(int kind, @Nullable Constructor<?> constructor) {
+            this.kind = kind;
+            this.constructor = new SoftReference<Constructor<?>>(constructor);
+        }
+
+        // Looks the constructor up again if it has been dropped, which throws for classes without a usable one.
+        @NonNull
+        Constructor<?> get(@NonNull Class<?> cls) throws NoSuchMethodException {
+            Constructor<?> resolved = constructor.get();
+            if (resolved == null) {
+                resolved = kind == CONSTRUCTOR_BUNDLE ? cls.getConstructor(Bundle.class) : cls.getConstructor();
+                constructor = new SoftReference<Constructor<?>>(resolved);
+            }
+            return resolved;
+        }
+    }
+
     /**
      * Modes that will influence when the Controller will allow its view to be destroyed
      */
@@ -1432,7 +1944,26 @@ public abstract class Controller {
         /**
          * The Controller will retain its reference to its view when detached, but will still release the reference when a config change occurs.
          */
-        RETAIN_DETACH
+        RETAIN_DETACH,
+        /**
+         * The Controller will retain its reference to its view when detached, as long as it is one of the most recently
+         * detached views in its router tree. Views are released in least recently used order once the root
+         * {@link Router}'s retained view limit is exceeded or the system is low on memory.
+         *
+         * @see Router#setRetainedViewLimit(int)
+         */
+        RETAIN_DETACH_ADAPTIVE
+    }
+
+    private static class PendingInflation extends FutureTask<View> {
+        final ViewGroup parent;
+        final Runnable onInflated;
+
+        PendingInflation(@NonNull ViewGroup parent, @NonNull Runnable onInflated, @NonNull Callable<View> callable) {
+            super(callable);
+            this.parent = parent;
+            this.onInflated = onInflated;
+        }
     }
 
     /**
@@ -1494,6 +2025,9 @@ public abstract class Controller {
         public void onRestoreInstanceState(@NonNull Controller controller, @NonNull Bundle savedInstanceState) {
         }
 
+        public void preSaveViewState(@NonNull Controller controller, @NonNull View view) {
+        }
+
         public void onSaveViewState(@NonNull Controller controller, @NonNull Bundle outState) {
         }
 
@@ -9,11 +9,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.bluelinelabs.conductor.changehandler.SimpleSwapChangeHandler;
-import com.bluelinelabs.conductor.internal.ClassUtils;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import com.bluelinelabs.conductor.internal.NoOpControllerChangeHandler;
 
 /**
  * ControllerChangeHandlers are responsible for swapping the View for one Controller to the View
@@ -25,7 +21,9 @@ public abstract class ControllerChangeHandler {
     private static final String KEY_CLASS_NAME = "ControllerChangeHandler.className";
     private static final String KEY_SAVED_STATE = "ControllerChangeHandler.savedState";
 
-    static final Map<String, ChangeHandlerData> inProgressChangeHandlers = new HashMap<>();
+    static final ControllerChangeListener[] EMPTY_LISTENERS = new ControllerChangeListener[0];
+
+    @Nullable private static SimpleSwapChangeHandler sharedSimpleSwapChangeHandler;
 
     boolean forceRemoveViewOnPush;
     private boolean hasBeenUsed;
@@ -112,6 +110,11 @@ public abstract class ControllerChangeHandler {
     }
 
     private void ensureDefaultConstructor() {
+        // Custom factories are free to use other constructors.
+        if (Conductor.getChangeHandlerFactory().getClass() != ChangeHandlerFactory.class) {
+            return;
+        }
+
         try {
             getClass().getConstructor();
         } catch (Exception e) {
@@ -123,8 +126,8 @@ public abstract class ControllerChangeHandler {
     public static ControllerChangeHandler fromBundle(@Nullable Bundle bundle) {
         if (bundle != null) {
             String className = bundle.getString(KEY_CLASS_NAME);
-            ControllerChangeHandler changeHandler = ClassUtils.newInstance(className);
             //noinspection ConstantConditions
+            ControllerChangeHandler changeHandler = Conductor.getChangeHandlerFactory().instantiate(className);
             changeHandler.restoreFromBundle(bundle.getBundle(KEY_SAVED_STATE));
             return changeHandler;
         } else {
@@ -132,109 +135,91 @@ public abstract class ControllerChangeHandler {
         }
     }
 
-    static boolean completeHandlerImmediately(@NonNull String controllerInstanceId) {
-        ChangeHandlerData changeHandlerData = inProgressChangeHandlers.get(controllerInstanceId);
-        if (changeHandlerData != null) {
-            changeHandlerData.changeHandler.completeImmediately();
-            inProgressChangeHandlers.remove(controllerInstanceId);
+    static boolean completeHandlerImmediately(@NonNull Controller controller) {
+        ControllerChangeHandler changeHandler = controller.inProgressChangeHandler;
+        if (changeHandler != null) {
+            controller.finishInflation();
+            changeHandler.completeImmediately();
+            controller.inProgressChangeHandler = null;
             return true;
         }
         return false;
     }
 
     static void abortOrComplete(@NonNull Controller toAbort, @Nullable Controller newController, @NonNull ControllerChangeHandler newChangeHandler) {
-        ChangeHandlerData changeHandlerData = inProgressChangeHandlers.get(toAbort.getInstanceId());
-        if (changeHandlerData != null) {
-            if (changeHandlerData.isPush) {
-                changeHandlerData.changeHandler.onAbortPush(newChangeHandler, newController);
+        ControllerChangeHandler changeHandler = toAbort.inProgressChangeHandler;
+        if (changeHandler != null) {
+            // A change can't be aborted before it has started, so any view still being inflated has to be
+            // finished first. This keeps the usual lifecycle callbacks paired up for the aborted controller.
+            toAbort.finishInflation();
+
+            if (toAbort.inProgressChangeIsPush) {
+                changeHandler.onAbortPush(newChangeHandler, newController);
             } else {
-                changeHandlerData.changeHandler.completeImmediately();
+                changeHandler.completeImmediately();
             }
 
-            inProgressChangeHandlers.remove(toAbort.getInstanceId());
+            toAbort.inProgressChangeHandler = null;
         }
     }
 
     static void executeChange(@NonNull final ChangeTransaction transaction) {
-        executeChange(transaction.to, transaction.from, transaction.isPush, transaction.container, transaction.changeHandler, transaction.listeners);
-    }
+        final Controller to = transaction.to;
+        final Controller from = transaction.from;
+        final boolean isPush = transaction.isPush;
+        final ViewGroup container = transaction.container;
+        final ControllerChangeHandler inHandler = transaction.changeHandler;
 
-    private static void executeChange(@Nullable final Controller to, @Nullable final Controller from, final boolean isPush, @Nullable final ViewGroup container, @Nullable final ControllerChangeHandler inHandler, @NonNull final List<ControllerChangeListener> listeners) {
         if (container != null) {
             final ControllerChangeHandler handler;
             if (inHandler == null) {
-                handler = new SimpleSwapChangeHandler();
+                handler = obtainSimpleSwapChangeHandler();
             } else if (inHandler.hasBeenUsed && !inHandler.isReusable()) {
                 handler = inHandler.copy();
             } else {
                 handler = inHandler;
             }
             handler.hasBeenUsed = true;
+            transaction.changeHandler = handler;
 
             if (from != null) {
                 if (isPush) {
-                    completeHandlerImmediately(from.getInstanceId());
+                    completeHandlerImmediately(from);
                 } else {
                     abortOrComplete(from, to, handler);
                 }
             }
 
             if (to != null) {
-                inProgressChangeHandlers.put(to.getInstanceId(), new ChangeHandlerData(handler, isPush));
+                to.inProgressChangeHandler = handler;
+                to.inProgressChangeIsPush = isPush;
             }
 
-            for (ControllerChangeListener listener : listeners) {
-                listener.onChangeStarted(to, from, isPush, container, handler);
+            if (transaction.metrics != null) {
+                transaction.metricsRecorder = new NavigationMetrics.ChangeRecorder(transaction.metrics, to, from, isPush, container, handler);
             }
 
-            final ControllerChangeType toChangeType = isPush ? ControllerChangeType.PUSH_ENTER : ControllerChangeType.POP_ENTER;
-            final ControllerChangeType fromChangeType = isPush ? ControllerChangeType.PUSH_EXIT : ControllerChangeType.POP_EXIT;
-
-            final View toView;
-            if (to != null) {
-                toView = to.inflate(container);
-                to.changeStarted(handler, toChangeType);
-            } else {
-                toView = null;
+            for (ControllerChangeListener listener : transaction.listeners) {
+                listener.onChangeStarted(to, from, isPush, container, handler);
             }
 
-            final View fromView;
-            if (from != null) {
-                fromView = from.getView();
-                from.changeStarted(handler, fromChangeType);
+            if (to != null && to.shouldInflateAsync()) {
+                // Hold off on running the handler until the view has been created on the inflater thread.
+                to.inflateAsync(container, transaction);
             } else {
-                fromView = null;
+                transaction.run();
             }
+        }
+    }
 
-            handler.performChange(container, fromView, toView, isPush, new ControllerChangeCompletedListener() {
-                @Override
-                public void onChangeCompleted() {
-                    if (from != null) {
-                        from.changeEnded(handler, fromChangeType);
-                    }
-
-                    if (to != null) {
-                        inProgressChangeHandlers.remove(to.getInstanceId());
-                        to.changeEnded(handler, toChangeType);
-                    }
-
-                    for (ControllerChangeListener listener : listeners) {
-                        listener.onChangeCompleted(to, from, isPush, container, handler);
-                    }
-
-                    if (handler.forceRemoveViewOnPush && fromView != null) {
-                        ViewParent fromParent = fromView.getParent();
-                        if (fromParent != null && fromParent instanceof ViewGroup) {
-                            ((ViewGroup) fromParent).removeView(fromView);
-                        }
-                    }
-
-                    if (handler.removesFromViewOnPush() && from != null) {
-                        from.setNeedsAttach(false);
-                    }
-                }
-            });
+    // The default handler is stateless between changes, so a single instance is shared for as long as it isn't in
+    // the middle of a change or been aborted.
+    @NonNull
+    private static ControllerChangeHandler obtainSimpleSwapChangeHandler() {
+        if (sharedSimpleSwapChangeHandler == null || !sharedSimpleSwapChangeHandler.isIdle()) {
+            sharedSimpleSwapChangeHandler = new SimpleSwapChangeHandler();
         }
+        return sharedSimpleSwapChangeHandler;
     }
 
     protected void onEnd() {
@@ -275,26 +260,168 @@ public abstract class ControllerChangeHandler {
         void onChangeCompleted(@Nullable Controller to, @Nullable Controller from, boolean isPush, @NonNull ViewGroup container, @NonNull ControllerChangeHandler handler);
     }
 
-    static class ChangeTransaction {
-        @Nullable
-        final Controller to;
-        @Nullable
-        final Controller from;
-        final boolean isPush;
-        @Nullable
-        final ViewGroup container;
-        @Nullable
-        final ControllerChangeHandler changeHandler;
+    /**
+     * A pending or in-progress change. Instances are pooled, so they should only be created through
+     * {@link #obtain(Controller, Controller, boolean, ViewGroup, ControllerChangeHandler, ControllerChangeListener[])}.
+     * A transaction returns itself to the pool once its change has completed, unless it was {@link #queued}
+     * or its handler might hold on to the completion listener.
+     */
+    static final class ChangeTransaction implements ControllerChangeCompletedListener, Runnable {
+        private static final int MAX_POOL_SIZE = 4;
+        private static final ChangeTransaction[] pool = new ChangeTransaction[MAX_POOL_SIZE];
+        private static int poolSize;
+
+        @Nullable Controller to;
+        @Nullable Controller from;
+        boolean isPush;
+        @Nullable ViewGroup container;
+        @Nullable ControllerChangeHandler changeHandler;
+        @NonNull ControllerChangeListener[] listeners = EMPTY_LISTENERS;
+
+        /**
+         * Set when this transaction has been queued up by its Router, which may still refer to it after it has run.
+         */
+        boolean queued;
+
+        /**
+         * The metrics of the Router running this change, if it's being measured.
+         */
+        @Nullable NavigationMetrics metrics;
+        @Nullable NavigationMetrics.ChangeRecorder metricsRecorder;
+
+        @Nullable private View fromView;
+
+        private ChangeTransaction() { }
+
         @NonNull
-        final List<ControllerChangeListener> listeners;
-
-        public ChangeTransaction(@Nullable Controller to, @Nullable Controller from, boolean isPush, @Nullable ViewGroup container, @Nullable ControllerChangeHandler changeHandler, @NonNull List<ControllerChangeListener> listeners) {
-            this.to = to;
-            this.from = from;
-            this.isPush = isPush;
-            this.container = container;
-            this.changeHandler = changeHandler;
-            this.listeners = listeners;
+        static ChangeTransaction obtain(@Nullable Controller to, @Nullable Controller from, boolean isPush, @Nullable ViewGroup container, @Nullable ControllerChangeHandler changeHandler, @NonNull ControllerChangeListener[] listeners) {
+            ChangeTransaction transaction;
+            if (poolSize > 0) {
+                transaction = pool[--poolSize];
+                pool[poolSize] = null;
+            } else {
+                transaction = new ChangeTransaction();
+            }
+
+            transaction.to = to;
+            transaction.from = from;
+            transaction.isPush = isPush;
+            transaction.container = container;
+            transaction.changeHandler = changeHandler;
+            transaction.listeners = listeners;
+            return transaction;
+        }
+
+        // Performs the change once the to view is ready.
+        @Override
+        public void run() {
+            final Controller to = this.to;
+            final Controller from = this.from;
+            final ControllerChangeHandler handler = changeHandler;
+            final ControllerChangeType toChangeType = isPush ? ControllerChangeType.PUSH_ENTER : ControllerChangeType.POP_ENTER;
+            final ControllerChangeType fromChangeType = isPush ? ControllerChangeType.PUSH_EXIT : ControllerChangeType.POP_EXIT;
+
+            final NavigationMetrics.ChangeRecorder metricsRecorder = this.metricsRecorder;
+
+            final View toView;
+            if (to != null) {
+                if (metricsRecorder != null) {
+                    metricsRecorder.onInflateStarted();
+                }
+                //noinspection ConstantConditions
+                toView = to.inflate(container);
+                if (metricsRecorder != null) {
+                    metricsRecorder.onInflateFinished(toView);
+                }
+                //noinspection ConstantConditions
+                to.changeStarted(handler, toChangeType);
+            } else {
+                toView = null;
+            }
+
+            if (from != null) {
+                fromView = from.getView();
+                //noinspection ConstantConditions
+                from.changeStarted(handler, fromChangeType);
+            } else {
+                fromView = null;
+            }
+
+            if (metricsRecorder != null) {
+                metricsRecorder.onAnimationStarted();
+            }
+
+            //noinspection ConstantConditions
+            handler.performChange(container, fromView, toView, isPush, this);
+        }
+
+        @Override
+        public void onChangeCompleted() {
+            final Controller to = this.to;
+            final Controller from = this.from;
+            final boolean isPush = this.isPush;
+            final ViewGroup container = this.container;
+            final ControllerChangeHandler handler = changeHandler;
+            final View fromView = this.fromView;
+            final ControllerChangeType toChangeType = isPush ? ControllerChangeType.PUSH_ENTER : ControllerChangeType.POP_ENTER;
+            final ControllerChangeType fromChangeType = isPush ? ControllerChangeType.PUSH_EXIT : ControllerChangeType.POP_EXIT;
+
+            if (from != null) {
+                //noinspection ConstantConditions
+                from.changeEnded(handler, fromChangeType);
+            }
+
+            if (to != null) {
+                to.inProgressChangeHandler = null;
+                //noinspection ConstantConditions
+                to.changeEnded(handler, toChangeType);
+            }
+
+            if (metricsRecorder != null) {
+                metricsRecorder.onChangeCompleted();
+            }
+
+            for (ControllerChangeListener listener : listeners) {
+                //noinspection ConstantConditions
+                listener.onChangeCompleted(to, from, isPush, container, handler);
+            }
+
+            //noinspection ConstantConditions
+            if (handler.forceRemoveViewOnPush && fromView != null) {
+                ViewParent fromParent = fromView.getParent();
+                if (fromParent != null && fromParent instanceof ViewGroup) {
+                    ((ViewGroup) fromParent).removeView(fromView);
+                }
+            }
+
+            if (handler.removesFromViewOnPush() && from != null) {
+                from.setNeedsAttach(false);
+            }
+
+            // Only the library's own immediate handlers are guaranteed to never call their completion listener more
+            // than once, so transactions run by any other handler are left for the garbage collector.
+            if (!queued && (handler instanceof SimpleSwapChangeHandler || handler instanceof NoOpControllerChangeHandler)) {
+                recycle();
+            }
+        }
+
+        /**
+         * Returns this transaction to the pool. It must not be used afterwards.
+         */
+        void recycle() {
+            to = null;
+            from = null;
+            container = null;
+            changeHandler = null;
+            listeners = EMPTY_LISTENERS;
+            metrics = null;
+            metricsRecorder = null;
+            fromView = null;
+            queued = false;
+
+            if (poolSize < MAX_POOL_SIZE) {
+                pool[poolSize++] = this;
+            }
         }
     }
 
@@ -309,14 +436,4 @@ public abstract class ControllerChangeHandler {
         void onChangeCompleted();
     }
 
-    private static class ChangeHandlerData {
-        public final ControllerChangeHandler changeHandler;
-        public final boolean isPush;
-
-        public ChangeHandlerData(ControllerChangeHandler changeHandler, boolean isPush) {
-            this.changeHandler = changeHandler;
-            this.isPush = isPush;
-        }
-    }
-
 }
@@ -0,0 +1,27 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+
+/**
+ * Creates [Controller]s as they're restored from saved state. The default implementation finds the Controller's
+ * constructor through reflection. Apps can set a subclass on [Conductor.controllerFactory] to create Controllers
+ * directly, or to pass dependencies into their constructors, and call through to super for any class they don't
+ * handle.
+ *
+ * Controllers are only required to have a constructor that takes a Bundle or a default constructor while the default
+ * factory is in use.
+ */
+open class ControllerFactory {
+
+  /**
+   * Creates a new instance of the Controller with the passed class name. Its saved state is restored after it has
+   * been returned.
+   *
+   * @param className The fully qualified class name of the Controller being restored
+   * @param args The arguments the Controller was created with, or null if it had none. These are added to the new
+   * Controller's args if it wasn't created with them.
+   */
+  open fun instantiate(className: String, args: Bundle?): Controller {
+    return Controller.instantiate(className, args)
+  }
+}
@@ -31,6 +31,7 @@ class ControllerHostedRouter extends Router {
     private String tag;
     private boolean isDetachFrozen;
     private boolean boundToContainer;
+    private boolean hostIdChangedSinceSave;
 
     ControllerHostedRouter() { }
 
@@ -61,7 +62,9 @@ class ControllerHostedRouter extends Router {
             this.container = container;
 
             for (RouterTransaction transaction : backstack) {
-                transaction.controller().setParentController(controller);
+                if (transaction.getCreatedController() != null) {
+                    transaction.controller().setParentController(controller);
+                }
             }
 
             watchContainerAttach();
@@ -69,6 +72,8 @@ class ControllerHostedRouter extends Router {
     }
 
     final void removeHost() {
+        trimPrewarmedControllers(0);
+
         if (container != null && container instanceof ControllerChangeListener) {
             removeChangeListener((ControllerChangeListener) container);
         }
@@ -80,7 +85,7 @@ class ControllerHostedRouter extends Router {
             }
         }
         for (RouterTransaction transaction : backstack) {
-            if (transaction.controller().getView() != null) {
+            if (transaction.getCreatedController() != null && transaction.controller().getView() != null) {
                 transaction.controller().detach(transaction.controller().getView(), true, false);
             }
         }
@@ -92,7 +97,9 @@ class ControllerHostedRouter extends Router {
     final void setDetachFrozen(boolean frozen) {
         isDetachFrozen = frozen;
         for (RouterTransaction transaction : backstack) {
-            transaction.controller().setDetachFrozen(frozen);
+            if (transaction.getCreatedController() != null) {
+                transaction.controller().setDetachFrozen(frozen);
+            }
         }
     }
 
@@ -129,7 +136,9 @@ class ControllerHostedRouter extends Router {
         if (to != null && !hostController.isAttached()) {
             if (to.pushChangeHandler() == null || to.pushChangeHandler().removesFromViewOnPush()) {
                 for (RouterTransaction transaction : backstack) {
-                    transaction.controller().setNeedsAttach(false);
+                    if (transaction.getCreatedController() != null || transaction.needsAttach()) {
+                        transaction.controller().setNeedsAttach(false);
+                    }
                 }
             }
         }
@@ -222,6 +231,12 @@ class ControllerHostedRouter extends Router {
         outState.putInt(KEY_HOST_ID, hostId);
         outState.putBoolean(KEY_BOUND_TO_CONTAINER, boundToContainer);
         outState.putString(KEY_TAG, tag);
+        hostIdChangedSinceSave = false;
+    }
+
+    @Override
+    boolean isSavedStateCurrent() {
+        return !hostIdChangedSinceSave && super.isSavedStateCurrent();
     }
 
     @Override
@@ -236,9 +251,18 @@ class ControllerHostedRouter extends Router {
     @Override
     void setRouterOnController(@NonNull Controller controller) {
         controller.setParentController(hostController);
+        if (isDetachFrozen) {
+            // Controllers that were restored lazily weren't around when detaching was frozen.
+            controller.setDetachFrozen(true);
+        }
         super.setRouterOnController(controller);
     }
 
+    @Override @Nullable
+    Controller getHostController() {
+        return hostController;
+    }
+
     int getHostId() {
         return hostId;
     }
@@ -249,6 +273,7 @@ class ControllerHostedRouter extends Router {
                 throw new IllegalStateException("Host ID can't be variable with a null tag");
             }
             if (this.tag.equals(tag)) {
+                hostIdChangedSinceSave |= this.hostId != hostId;
                 this.hostId = hostId;
                 return true;
             }
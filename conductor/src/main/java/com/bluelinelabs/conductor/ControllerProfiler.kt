@@ -0,0 +1,325 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.view.View
+import android.view.ViewGroup
+import androidx.annotation.UiThread
+import com.bluelinelabs.conductor.ControllerChangeHandler.ControllerChangeListener
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.ceil
+
+/**
+ * Times the lifecycle phases of the [Controller]s in the [Router]s it's installed on, and keeps a histogram of each
+ * phase for every class of Controller. The timings come from the pre and post callbacks of a
+ * [Controller.LifecycleListener], so they include the time taken by any other LifecycleListeners.
+ *
+ * Measuring doesn't allocate once a Controller class has been seen, so this is cheap enough to leave installed in
+ * production. The histograms can be read from any thread, either through [dump] or by streaming each measurement to a
+ * [Listener]. Child Routers aren't profiled unless the profiler is also installed on them.
+ */
+class ControllerProfiler {
+
+  private val profiles = ConcurrentHashMap<Class<out Controller>, Array<LatencyHistogram>>()
+
+  // Phases that have started but not ended, kept in parallel arrays so that timing them never allocates. Phases
+  // usually nest, but views that are inflated asynchronously can end theirs out of order.
+  private var pendingControllers = arrayOfNulls<Controller>(INITIAL_PENDING_CAPACITY)
+  private var pendingPhases = IntArray(INITIAL_PENDING_CAPACITY)
+  private var pendingStartTimes = LongArray(INITIAL_PENDING_CAPACITY)
+  private var pendingCount = 0
+
+  /**
+   * Notified on the main thread every time a phase has been measured.
+   */
+  @Volatile
+  var listener: Listener? = null
+
+  private val lifecycleListener = object : Controller.LifecycleListener() {
+    override fun preCreateView(controller: Controller) = begin(controller, Phase.CREATE_VIEW)
+
+    override fun postCreateView(controller: Controller, view: View) = end(controller, Phase.CREATE_VIEW)
+
+    override fun preAttach(controller: Controller, view: View) = begin(controller, Phase.ATTACH)
+
+    override fun postAttach(controller: Controller, view: View) = end(controller, Phase.ATTACH)
+
+    override fun preDetach(controller: Controller, view: View) = begin(controller, Phase.DETACH)
+
+    override fun postDetach(controller: Controller, view: View) = end(controller, Phase.DETACH)
+
+    override fun preSaveViewState(controller: Controller, view: View) = begin(controller, Phase.SAVE_VIEW_STATE)
+
+    override fun onSaveViewState(controller: Controller, outState: Bundle) {
+      end(controller, Phase.SAVE_VIEW_STATE)
+    }
+
+    override fun preDestroy(controller: Controller) = begin(controller, Phase.DESTROY)
+
+    override fun postDestroy(controller: Controller) {
+      end(controller, Phase.DESTROY)
+      dropPending(controller)
+    }
+  }
+
+  // Adds the lifecycle listener to Controllers as they're changed to, before their views are created.
+  private val changeListener = object : ControllerChangeListener {
+    override fun onChangeStarted(
+      to: Controller?,
+      from: Controller?,
+      isPush: Boolean,
+      container: ViewGroup,
+      handler: ControllerChangeHandler
+    ) {
+      to?.addLifecycleListener(lifecycleListener)
+    }
+
+    override fun onChangeCompleted(
+      to: Controller?,
+      from: Controller?,
+      isPush: Boolean,
+      container: ViewGroup,
+      handler: ControllerChangeHandler
+    ) {
+    }
+  }
+
+  /**
+   * Starts profiling the Controllers in the passed Router, including the ones added to it later.
+   */
+  @UiThread
+  fun install(router: Router) {
+    router.addChangeListener(changeListener)
+    router.backstack.forEach { it.createdController?.addLifecycleListener(lifecycleListener) }
+  }
+
+  /**
+   * Stops profiling the Controllers in the passed Router.
+   */
+  @UiThread
+  fun uninstall(router: Router) {
+    router.removeChangeListener(changeListener)
+    router.backstack.forEach { it.createdController?.removeLifecycleListener(lifecycleListener) }
+  }
+
+  /**
+   * Returns the histogram for a phase of the passed class of Controller, or null if it hasn't been profiled.
+   */
+  fun getHistogram(controllerClass: Class<out Controller>, phase: Phase): LatencyHistogram? {
+    return profiles[controllerClass]?.get(phase.ordinal)
+  }
+
+  /**
+   * The classes of Controller that have been profiled so far.
+   */
+  val profiledClasses: Set<Class<out Controller>>
+    get() = profiles.keys.toSet()
+
+  /**
+   * Writes a table of every profiled phase's count and percentiles, in milliseconds, to [out].
+   */
+  fun dump(out: Appendable) {
+    for ((controllerClass, histograms) in profiles) {
+      out.append(controllerClass.name).append('\n')
+      for (phase in PHASES) {
+        val histogram = histograms[phase.ordinal]
+        if (histogram.count == 0L) {
+          continue
+        }
+
+        out.append("  ").append(phase.name)
+          .append(": count=").append(histogram.count.toString())
+          .append(", p50=").append(histogram.percentileNanos(50.0).formatMillis())
+          .append(", p90=").append(histogram.percentileNanos(90.0).formatMillis())
+          .append(", p99=").append(histogram.percentileNanos(99.0).formatMillis())
+          .append(", max=").append(histogram.maxNanos.formatMillis())
+          .append('\n')
+      }
+    }
+  }
+
+  fun dump(): String = buildString { dump(this) }
+
+  /**
+   * Clears all histograms.
+   */
+  fun reset() {
+    profiles.clear()
+  }
+
+  private fun begin(controller: Controller, phase: Phase) {
+    if (pendingCount == pendingControllers.size) {
+      val capacity = pendingCount * 2
+      pendingControllers = pendingControllers.copyOf(capacity)
+      pendingPhases = pendingPhases.copyOf(capacity)
+      pendingStartTimes = pendingStartTimes.copyOf(capacity)
+    }
+
+    pendingControllers[pendingCount] = controller
+    pendingPhases[pendingCount] = phase.ordinal
+    pendingStartTimes[pendingCount] = System.nanoTime()
+    pendingCount++
+  }
+
+  private fun end(controller: Controller, phase: Phase) {
+    val endTime = System.nanoTime()
+
+    var index = pendingCount - 1
+    while (index >= 0 && (pendingControllers[index] !== controller || pendingPhases[index] != phase.ordinal)) {
+      index--
+    }
+    if (index < 0) {
+      // The listener was added part way through this phase.
+      return
+    }
+
+    val duration = endTime - pendingStartTimes[index]
+    removePending(index)
+
+    val controllerClass = controller.javaClass
+    val histograms = profiles[controllerClass]
+      ?: profiles.putIfAbsent(controllerClass, Array(PHASES.size) { LatencyHistogram() })
+      ?: profiles[controllerClass]!!
+    histograms[phase.ordinal].record(duration)
+
+    listener?.onPhaseMeasured(controllerClass, phase, duration)
+  }
+
+  // Drops the phases of a destroyed Controller that never ended, ex: because onCreateView threw, so that they don't
+  // keep it from being collected.
+  private fun dropPending(controller: Controller) {
+    for (index in pendingCount - 1 downTo 0) {
+      if (pendingControllers[index] === controller) {
+        removePending(index)
+      }
+    }
+  }
+
+  private fun removePending(index: Int) {
+    System.arraycopy(pendingControllers, index + 1, pendingControllers, index, pendingCount - index - 1)
+    System.arraycopy(pendingPhases, index + 1, pendingPhases, index, pendingCount - index - 1)
+    System.arraycopy(pendingStartTimes, index + 1, pendingStartTimes, index, pendingCount - index - 1)
+    pendingCount--
+    pendingControllers[pendingCount] = null
+  }
+
+  enum class Phase {
+    CREATE_VIEW,
+    ATTACH,
+    DETACH,
+    SAVE_VIEW_STATE,
+    DESTROY
+  }
+
+  /**
+   * Receives every measurement as it's made, ex: to stream them to a telemetry backend.
+   */
+  fun interface Listener {
+    fun onPhaseMeasured(controllerClass: Class<out Controller>, phase: Phase, durationNanos: Long)
+  }
+
+  /**
+   * A histogram of durations with log-linear buckets, in the style of HdrHistogram. Each power of two microseconds
+   * is split into 8 buckets, so percentiles are accurate to within 12.5%. Durations are recorded without locking and
+   * can be read from any thread.
+   */
+  class LatencyHistogram internal constructor() {
+    private val counts = AtomicLongArray(BUCKET_COUNT)
+    private val totalCount = AtomicLong()
+    private val total = AtomicLong()
+    private val max = AtomicLong()
+
+    val count: Long
+      get() = totalCount.get()
+
+    val totalNanos: Long
+      get() = total.get()
+
+    val maxNanos: Long
+      get() = max.get()
+
+    val meanNanos: Long
+      get() = count.let { count -> if (count == 0L) 0 else totalNanos / count }
+
+    /**
+     * Returns the duration that the passed percentile (0 to 100) of recorded durations are at or under, rounded up
+     * to the end of its bucket.
+     */
+    fun percentileNanos(percentile: Double): Long {
+      require(percentile in 0.0..100.0) { "Percentiles must be between 0 and 100." }
+      val count = count
+      if (count == 0L) {
+        return 0
+      }
+
+      val target = ceil(count * percentile / 100).toLong().coerceAtLeast(1)
+      var seen = 0L
+      for (bucket in 0 until BUCKET_COUNT) {
+        seen += counts.get(bucket)
+        if (seen >= target) {
+          return minOf(TimeUnit.MICROSECONDS.toNanos(upperBound(bucket)), maxNanos)
+        }
+      }
+      return maxNanos
+    }
+
+    /**
+     * Returns a copy of the bucket counts, where bucket i holds durations from [bucketLowerBoundMicros] (i) up to
+     * [bucketLowerBoundMicros] (i + 1).
+     */
+    fun bucketCounts(): LongArray = LongArray(BUCKET_COUNT) { counts.get(it) }
+
+    internal fun record(nanos: Long) {
+      val micros = TimeUnit.NANOSECONDS.toMicros(nanos).coerceIn(0, MAX_MICROS)
+      counts.incrementAndGet(bucketIndex(micros))
+      totalCount.incrementAndGet()
+      total.addAndGet(nanos)
+
+      var currentMax = max.get()
+      while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+        currentMax = max.get()
+      }
+    }
+
+    companion object {
+      private const val SUB_BUCKET_BITS = 3
+      private const val SUB_BUCKET_COUNT = 1 shl SUB_BUCKET_BITS
+      private const val MAX_MICROS = Int.MAX_VALUE.toLong()
+
+      @JvmField
+      val BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1
+
+      /**
+       * Returns the smallest duration, in microseconds, held by the passed bucket.
+       */
+      @JvmStatic
+      fun bucketLowerBoundMicros(bucket: Int): Long {
+        if (bucket < 2 * SUB_BUCKET_COUNT) {
+          return bucket.toLong()
+        }
+        val shift = (bucket shr SUB_BUCKET_BITS) - 1
+        return ((bucket and (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT).toLong() shl shift
+      }
+
+      private fun upperBound(bucket: Int): Long = bucketLowerBoundMicros(bucket + 1) - 1
+
+      private fun bucketIndex(micros: Long): Int {
+        if (micros < 2 * SUB_BUCKET_COUNT) {
+          return micros.toInt()
+        }
+        val shift = 63 - java.lang.Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS
+        return ((shift + 1) shl SUB_BUCKET_BITS) + (micros shr shift).toInt() - SUB_BUCKET_COUNT
+      }
+    }
+  }
+
+  private companion object {
+    const val INITIAL_PENDING_CAPACITY = 16
+    val PHASES = Phase.values()
+
+    fun Long.formatMillis(): String = String.format(Locale.US, "%.2fms", this / 1_000_000.0)
+  }
+}
@@ -0,0 +1,153 @@
+package com.bluelinelabs.conductor
+
+import android.app.Activity
+import android.app.Application
+import android.content.Context
+import android.content.ContextWrapper
+import android.os.Bundle
+import android.view.View
+import androidx.annotation.RestrictTo
+import androidx.annotation.RestrictTo.Scope.LIBRARY
+import androidx.annotation.UiThread
+
+/**
+ * Holds on to views released by [Controller]s so that later instances of the same Controller class
+ * can reuse them instead of inflating a new view hierarchy. Pools are opt-in and can be shared between
+ * any number of Controllers through [Controller.setViewPool].
+ *
+ * A view is only ever handed back to a Controller of the exact class that released it, and only within
+ * the same Activity. Controllers that use a pool should implement [Controller.onRecycleView] to clear any
+ * per-instance state from their view and [Controller.onBindRecycledView] to bind a reused view.
+ *
+ * @param maxViewsPerClass The maximum number of views that will be kept for any single Controller class
+ * @param maxViews The maximum number of views that will be kept in total. The least recently released
+ * views are dropped first.
+ */
+@UiThread
+class ControllerViewPool @JvmOverloads constructor(
+  private val maxViewsPerClass: Int = DEFAULT_MAX_VIEWS_PER_CLASS,
+  private val maxViews: Int = DEFAULT_MAX_VIEWS
+) {
+
+  private val viewsByClass = HashMap<Class<out Controller>, ArrayDeque<View>>()
+
+  // All pooled views in release order, used to find the least recently released view once the total cap is hit.
+  private val releaseOrder = ArrayDeque<PooledView>()
+
+  // Registered while this pool holds any views, so that views are dropped as soon as their Activity is destroyed,
+  // whether or not any Controller using the pool is still around to notice.
+  private var registeredApplication: Application? = null
+  private val activityCallbacks = object : Application.ActivityLifecycleCallbacks {
+    override fun onActivityDestroyed(activity: Activity) = dropViewsFor(activity)
+    override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {}
+    override fun onActivityStarted(activity: Activity) {}
+    override fun onActivityResumed(activity: Activity) {}
+    override fun onActivityPaused(activity: Activity) {}
+    override fun onActivityStopped(activity: Activity) {}
+    override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+  }
+
+  init {
+    require(maxViewsPerClass >= 0 && maxViews >= 0) { "View pool sizes can't be negative." }
+  }
+
+  /**
+   * Returns the number of views currently held by this pool.
+   */
+  val size: Int get() = releaseOrder.size
+
+  /**
+   * Drops all views held by this pool.
+   */
+  fun clear() {
+    viewsByClass.clear()
+    releaseOrder.clear()
+    unregisterIfEmpty()
+  }
+
+  @RestrictTo(LIBRARY)
+  fun acquire(controllerClass: Class<out Controller>, context: Context): View? {
+    val views = viewsByClass[controllerClass] ?: return null
+    val host = context.host()
+
+    val iterator = views.iterator()
+    while (iterator.hasNext()) {
+      val view = iterator.next()
+      if (view.context.host() === host) {
+        iterator.remove()
+        releaseOrder.removeAll { it.view === view }
+        unregisterIfEmpty()
+        return view
+      }
+    }
+    return null
+  }
+
+  @RestrictTo(LIBRARY)
+  fun release(controllerClass: Class<out Controller>, view: View): Boolean {
+    if (view.parent != null || maxViewsPerClass == 0 || maxViews == 0) {
+      return false
+    }
+
+    // Views from an Activity that's going away could never be handed out again.
+    val host = view.context.host()
+    if (host is Activity && (host.isFinishing || host.isChangingConfigurations)) {
+      return false
+    }
+
+    val views = viewsByClass.getOrPut(controllerClass) { ArrayDeque() }
+    if (views.size >= maxViewsPerClass) {
+      return false
+    }
+
+    // The next Controller to use this view will set itself as its owner.
+    view.setTag(R.id.view_tree_lifecycle_owner, null)
+    view.setTag(R.id.view_tree_saved_state_registry_owner, null)
+
+    views.addLast(view)
+    releaseOrder.addLast(PooledView(controllerClass, view))
+    if (registeredApplication == null && host is Activity) {
+      registeredApplication = host.application.also { it.registerActivityLifecycleCallbacks(activityCallbacks) }
+    }
+
+    while (releaseOrder.size > maxViews) {
+      val evicted = releaseOrder.removeFirst()
+      viewsByClass[evicted.controllerClass]?.remove(evicted.view)
+    }
+    return true
+  }
+
+  // Views can't be reused once their Activity has been destroyed, and would keep it from being collected.
+  private fun dropViewsFor(activity: Activity) {
+    releaseOrder.removeAll { pooledView ->
+      (pooledView.view.context.host() === activity).also { belongsToActivity ->
+        if (belongsToActivity) {
+          viewsByClass[pooledView.controllerClass]?.remove(pooledView.view)
+        }
+      }
+    }
+    unregisterIfEmpty()
+  }
+
+  private fun unregisterIfEmpty() {
+    if (releaseOrder.isEmpty()) {
+      registeredApplication?.unregisterActivityLifecycleCallbacks(activityCallbacks)
+      registeredApplication = null
+    }
+  }
+
+  private tailrec fun Context.host(): Context {
+    return when {
+      this is Activity -> this
+      this is ContextWrapper && baseContext != null -> baseContext.host()
+      else -> this
+    }
+  }
+
+  private class PooledView(val controllerClass: Class<out Controller>, val view: View)
+
+  companion object {
+    const val DEFAULT_MAX_VIEWS_PER_CLASS = 2
+    const val DEFAULT_MAX_VIEWS = 8
+  }
+}
@@ -0,0 +1,79 @@
+package com.bluelinelabs.conductor
+
+import android.view.Choreographer
+import androidx.annotation.UiThread
+import com.bluelinelabs.conductor.ChangeScheduler.PendingChangeQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * A [ChangeScheduler] that spreads queued changes across frames, so that a burst of them (and the views they inflate)
+ * doesn't stall a single frame. Changes are run until [frameBudgetMs] has been used up, and the rest wait for the
+ * next frame. At least one change is run every frame, even if it takes longer than the budget on its own. A single
+ * scheduler can be shared by any number of Routers.
+ *
+ * @param frameBudgetMs How long queued changes can run for in each frame
+ */
+@UiThread
+class FrameBudgetChangeScheduler @JvmOverloads constructor(
+  frameBudgetMs: Long = DEFAULT_FRAME_BUDGET_MS
+) : ChangeScheduler, Choreographer.FrameCallback {
+
+  private val frameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(frameBudgetMs)
+  private val waitingQueues = ArrayList<PendingChangeQueue>()
+  private var frameScheduled = false
+  private var running = false
+
+  init {
+    require(frameBudgetMs > 0) { "The frame budget must be positive." }
+  }
+
+  override fun schedule(queue: PendingChangeQueue) {
+    if (queue !in waitingQueues) {
+      waitingQueues.add(queue)
+    }
+
+    // Queues are only handed over once their container is ready, so there's no need to wait for a frame to start.
+    if (!frameScheduled) {
+      runWithinBudget()
+    }
+  }
+
+  override fun doFrame(frameTimeNanos: Long) {
+    frameScheduled = false
+    runWithinBudget()
+  }
+
+  private fun runWithinBudget() {
+    if (running) {
+      return
+    }
+
+    running = true
+    try {
+      val deadline = System.nanoTime() + frameBudgetNanos
+      var ranChange = false
+      while (waitingQueues.isNotEmpty()) {
+        val queue = waitingQueues[0]
+        if (!queue.hasNext()) {
+          waitingQueues.removeAt(0)
+        } else if (ranChange && System.nanoTime() >= deadline) {
+          break
+        } else {
+          queue.runNext()
+          ranChange = true
+        }
+      }
+    } finally {
+      running = false
+    }
+
+    if (waitingQueues.isNotEmpty() && !frameScheduled) {
+      frameScheduled = true
+      Choreographer.getInstance().postFrameCallback(this)
+    }
+  }
+
+  private companion object {
+    const val DEFAULT_FRAME_BUDGET_MS = 8L
+  }
+}
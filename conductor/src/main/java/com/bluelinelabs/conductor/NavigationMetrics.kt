@@ -0,0 +1,350 @@
+package com.bluelinelabs.conductor
+
+import android.os.Build
+import android.view.Choreographer
+import android.view.View
+import android.view.ViewGroup
+import android.view.ViewTreeObserver
+import androidx.annotation.UiThread
+import java.util.concurrent.TimeUnit
+import kotlin.math.roundToInt
+
+/**
+ * Measures how long the [Controller] changes of the [Router]s it's set on take, via [Router.setNavigationMetrics].
+ * For every change, this records how long the new Controller's view took to inflate, how long it took until that
+ * view was first drawn, how long the [ControllerChangeHandler] took to run, the total latency of the change and how
+ * many frames were dropped while it was running.
+ *
+ * Each measurement is passed to the added [Listener]s and aggregated into [ControllerStats] for the class of the
+ * Controller being changed to. Child Routers aren't measured unless they're given metrics of their own, which can be
+ * the same instance.
+ */
+@UiThread
+class NavigationMetrics {
+
+  private var listeners = emptyList<Listener>()
+  private val statsByClass = LinkedHashMap<String, ControllerStats>()
+
+  /**
+   * The stats for each class of Controller that has been changed to, keyed by class name.
+   */
+  val stats: Map<String, ControllerStats>
+    get() = statsByClass
+
+  /**
+   * Returns the stats for changes to Controllers of the passed class, or null if there haven't been any.
+   */
+  fun getStats(controllerClass: Class<out Controller>): ControllerStats? = statsByClass[controllerClass.name]
+
+  fun addListener(listener: Listener) {
+    if (listener !in listeners) {
+      listeners = listeners + listener
+    }
+  }
+
+  fun removeListener(listener: Listener) {
+    listeners = listeners - listener
+  }
+
+  /**
+   * Clears all aggregated stats.
+   */
+  fun reset() {
+    statsByClass.clear()
+  }
+
+  private fun onChangeMeasured(measurement: ChangeMeasurement) {
+    val className = measurement.toClassName
+    if (className != null) {
+      statsByClass.getOrPut(className) { ControllerStats() }.add(measurement)
+    }
+
+    listeners.forEach { it.onChangeMeasured(measurement) }
+  }
+
+  /**
+   * Notified every time a change has been measured.
+   */
+  fun interface Listener {
+    fun onChangeMeasured(measurement: ChangeMeasurement)
+  }
+
+  /**
+   * The timings of a single change. All durations are in nanoseconds.
+   */
+  class ChangeMeasurement internal constructor(
+    /**
+     * The class name of the Controller being changed to, or null if there wasn't one.
+     */
+    val toClassName: String?,
+    /**
+     * The class name of the Controller being changed from, or null if there wasn't one.
+     */
+    val fromClassName: String?,
+    val isPush: Boolean,
+    val changeHandlerClassName: String,
+    /**
+     * How long creating the new Controller's view took, or 0 if it already had one.
+     */
+    val inflateTimeNanos: Long,
+    /**
+     * How long it took from the start of the change until the new Controller's view was first drawn, or -1 if it
+     * wasn't drawn while the change was being measured.
+     */
+    val timeToFirstDrawNanos: Long,
+    /**
+     * How long the change handler took, from being started until it reported that the change was complete.
+     */
+    val animationDurationNanos: Long,
+    /**
+     * How long it took from the start of the change until it was complete and the new view had been drawn.
+     */
+    val changeLatencyNanos: Long,
+    /**
+     * How many frames were missed while the change was running.
+     */
+    val droppedFrames: Int
+  ) {
+    override fun toString(): String {
+      return "ChangeMeasurement(to=$toClassName, from=$fromClassName, isPush=$isPush, " +
+        "handler=$changeHandlerClassName, inflate=${inflateTimeNanos.toMillis()}ms, " +
+        "firstDraw=${timeToFirstDrawNanos.toMillis()}ms, animation=${animationDurationNanos.toMillis()}ms, " +
+        "latency=${changeLatencyNanos.toMillis()}ms, droppedFrames=$droppedFrames)"
+    }
+  }
+
+  /**
+   * Aggregated timings of all changes to one class of Controller.
+   */
+  class ControllerStats internal constructor() {
+    val inflateTime = Histogram()
+    val timeToFirstDraw = Histogram()
+    val animationDuration = Histogram()
+    val changeLatency = Histogram()
+
+    /**
+     * The number of measured changes.
+     */
+    var changeCount = 0
+      private set
+
+    /**
+     * The number of frames dropped across all measured changes.
+     */
+    var droppedFrames = 0L
+      private set
+
+    internal fun add(measurement: ChangeMeasurement) {
+      changeCount++
+      droppedFrames += measurement.droppedFrames
+      inflateTime.add(measurement.inflateTimeNanos)
+      if (measurement.timeToFirstDrawNanos >= 0) {
+        timeToFirstDraw.add(measurement.timeToFirstDrawNanos)
+      }
+      animationDuration.add(measurement.animationDurationNanos)
+      changeLatency.add(measurement.changeLatencyNanos)
+    }
+  }
+
+  /**
+   * A histogram of durations, bucketed by powers of two milliseconds from 1ms up to 2048ms.
+   */
+  class Histogram internal constructor() {
+    private val bucketCounts = IntArray(BUCKET_BOUNDS_MS.size + 1)
+
+    var count = 0
+      private set
+
+    var totalNanos = 0L
+      private set
+
+    var maxNanos = 0L
+      private set
+
+    val meanNanos: Long
+      get() = if (count == 0) 0 else totalNanos / count
+
+    /**
+     * The number of durations in each bucket. Bucket i holds durations of up to [BUCKET_BOUNDS_MS] [i] milliseconds,
+     * and the last bucket holds everything longer than that.
+     */
+    val buckets: List<Int>
+      get() = bucketCounts.toList()
+
+    /**
+     * Returns the upper bound, in milliseconds, of the bucket holding the passed percentile (0 to 100), or the
+     * longest duration for the last bucket.
+     */
+    fun percentileMs(percentile: Int): Long {
+      require(percentile in 0..100) { "Percentiles must be between 0 and 100." }
+      if (count == 0) {
+        return 0
+      }
+
+      val target = (count * percentile / 100.0).roundToInt().coerceAtLeast(1)
+      var seen = 0
+      for (i in bucketCounts.indices) {
+        seen += bucketCounts[i]
+        if (seen >= target) {
+          return if (i < BUCKET_BOUNDS_MS.size) BUCKET_BOUNDS_MS[i] else maxNanos.toMillis()
+        }
+      }
+      return maxNanos.toMillis()
+    }
+
+    internal fun add(nanos: Long) {
+      val millis = nanos.toMillis()
+      var bucket = 0
+      while (bucket < BUCKET_BOUNDS_MS.size && millis > BUCKET_BOUNDS_MS[bucket]) {
+        bucket++
+      }
+      bucketCounts[bucket]++
+      count++
+      totalNanos += nanos
+      maxNanos = maxOf(maxNanos, nanos)
+    }
+
+    companion object {
+      @JvmField
+      val BUCKET_BOUNDS_MS = longArrayOf(1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048)
+    }
+  }
+
+  /**
+   * Records the timings of a single change as it runs. Once the change has completed and the new view has been
+   * drawn, or a few frames have gone by without it being drawn, the measurement is reported.
+   */
+  internal class ChangeRecorder(
+    private val metrics: NavigationMetrics,
+    to: Controller?,
+    from: Controller?,
+    private val isPush: Boolean,
+    container: ViewGroup,
+    handler: ControllerChangeHandler
+  ) : Choreographer.FrameCallback, ViewTreeObserver.OnDrawListener {
+
+    private val toClassName = to?.javaClass?.name
+    private val fromClassName = from?.javaClass?.name
+    private val handlerClassName = handler.javaClass.name
+    private val frameIntervalNanos = frameIntervalNanos(container)
+
+    private val startNanos = System.nanoTime()
+    private var inflateStartNanos = 0L
+    private var inflateTimeNanos = 0L
+    private var animationStartNanos = 0L
+    private var completedNanos = 0L
+    private var firstDrawNanos = 0L
+
+    private var toView: View? = null
+    private var lastFrameTimeNanos = 0L
+    private var droppedFrames = 0
+    private var framesSinceCompleted = 0
+    private var reported = false
+
+    init {
+      Choreographer.getInstance().postFrameCallback(this)
+    }
+
+    fun onInflateStarted() {
+      inflateStartNanos = System.nanoTime()
+    }
+
+    fun onInflateFinished(view: View?) {
+      inflateTimeNanos = System.nanoTime() - inflateStartNanos
+      toView = view
+      view?.viewTreeObserver?.addOnDrawListener(this)
+    }
+
+    fun onAnimationStarted() {
+      animationStartNanos = System.nanoTime()
+    }
+
+    fun onChangeCompleted() {
+      if (completedNanos == 0L) {
+        completedNanos = System.nanoTime()
+        if (firstDrawNanos != 0L || toView?.isShown != true) {
+          report()
+        }
+      }
+    }
+
+    override fun onDraw() {
+      if (firstDrawNanos == 0L) {
+        firstDrawNanos = System.nanoTime()
+        // Listeners can't be removed while they're being dispatched to.
+        val view = toView
+        toView = null
+        view?.post { view.viewTreeObserver.removeOnDrawListener(this) }
+        if (completedNanos != 0L) {
+          report()
+        }
+      }
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+      if (reported) {
+        return
+      }
+
+      if (lastFrameTimeNanos != 0L) {
+        val missed = ((frameTimeNanos - lastFrameTimeNanos).toDouble() / frameIntervalNanos).roundToInt() - 1
+        droppedFrames += missed.coerceAtLeast(0)
+      }
+      lastFrameTimeNanos = frameTimeNanos
+
+      if (completedNanos != 0L && ++framesSinceCompleted > MAX_FRAMES_WITHOUT_DRAW) {
+        // The view isn't going to be drawn, ex: if it's been hidden or the host has gone into the background.
+        report()
+      } else {
+        Choreographer.getInstance().postFrameCallback(this)
+      }
+    }
+
+    private fun report() {
+      if (reported) {
+        return
+      }
+      reported = true
+      Choreographer.getInstance().removeFrameCallback(this)
+      removeDrawListener()
+
+      val animationStart = if (animationStartNanos != 0L) animationStartNanos else startNanos
+      val endNanos = maxOf(completedNanos, firstDrawNanos)
+      metrics.onChangeMeasured(
+        ChangeMeasurement(
+          toClassName = toClassName,
+          fromClassName = fromClassName,
+          isPush = isPush,
+          changeHandlerClassName = handlerClassName,
+          inflateTimeNanos = inflateTimeNanos,
+          timeToFirstDrawNanos = if (firstDrawNanos != 0L) firstDrawNanos - startNanos else -1,
+          animationDurationNanos = completedNanos - animationStart,
+          changeLatencyNanos = endNanos - startNanos,
+          droppedFrames = droppedFrames
+        )
+      )
+    }
+
+    private fun removeDrawListener() {
+      val view = toView ?: return
+      toView = null
+      view.viewTreeObserver.removeOnDrawListener(this)
+    }
+
+    private companion object {
+      const val MAX_FRAMES_WITHOUT_DRAW = 3
+      const val DEFAULT_REFRESH_RATE = 60f
+
+      fun frameIntervalNanos(container: View): Long {
+        val refreshRate = if (Build.VERSION.SDK_INT >= 17) {
+          container.display?.refreshRate?.takeIf { it > 0 } ?: DEFAULT_REFRESH_RATE
+        } else {
+          DEFAULT_REFRESH_RATE
+        }
+        return (TimeUnit.SECONDS.toNanos(1) / refreshRate).toLong()
+      }
+    }
+  }
+}
+
+private fun Long.toMillis(): Long = TimeUnit.NANOSECONDS.toMillis(this)
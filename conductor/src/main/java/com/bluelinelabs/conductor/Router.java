@@ -1,9 +1,11 @@
 package com.bluelinelabs.conductor;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -18,14 +20,26 @@ import androidx.annotation.UiThread;
 import com.bluelinelabs.conductor.ControllerChangeHandler.ChangeTransaction;
 import com.bluelinelabs.conductor.ControllerChangeHandler.ControllerChangeListener;
 import com.bluelinelabs.conductor.changehandler.SimpleSwapChangeHandler;
+import com.bluelinelabs.conductor.internal.CompactBundleCodec;
 import com.bluelinelabs.conductor.internal.NoOpControllerChangeHandler;
 import com.bluelinelabs.conductor.internal.ThreadUtils;
+import com.bluelinelabs.conductor.internal.Tracing;
 import com.bluelinelabs.conductor.internal.TransactionIndexer;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A Router implements navigation and backstack handling for {@link Controller}s. Router objects are attached
@@ -35,14 +49,53 @@ import java.util.List;
 public abstract class Router {
 
     private static final String KEY_BACKSTACK = "Router.backstack";
+    private static final String KEY_BACKSTACK_COMPACT = "Router.backstack.compact";
     private static final String KEY_POP_ROOT_CONTROLLER_MODE = "Router.popRootControllerMode";
+    private static final int DEFAULT_PREWARM_LIMIT = 2;
+    private static final int DEFAULT_RETAINED_VIEW_LIMIT = 3;
 
     final Backstack backstack = new Backstack();
-    private final List<ControllerChangeListener> changeListeners = new ArrayList<>();
+    // Copy-on-write, so each change can hold on to the current array rather than copying it.
+    private ControllerChangeListener[] changeListeners = ControllerChangeHandler.EMPTY_LISTENERS;
+    @Nullable private NavigationMetrics navigationMetrics;
     private final List<ChangeTransaction> pendingControllerChanges = new ArrayList<>();
+    // The index of the next change in pendingControllerChanges to run. Changes that have run stay in the list until
+    // all of them have, so that changes made in the meantime are still queued behind them.
+    private int pendingChangeIndex;
+    @Nullable private ChangeScheduler changeScheduler;
+    private final ChangeScheduler.PendingChangeQueue pendingChangeQueue = new ChangeScheduler.PendingChangeQueue() {
+        @Override
+        public boolean hasNext() {
+            return pendingChangeIndex < pendingControllerChanges.size();
+        }
+
+        @Override
+        public void runNext() {
+            runNextPendingControllerChange();
+        }
+    };
     final List<Controller> destroyingControllers = new ArrayList<>();
+    private final Map<String, Controller> controllerRegistry = new HashMap<>();
+
+    // State for batched transactions started with beginTransaction(). While a batch is open, all
+    // backstack operations are applied to batchedBackstack and only reconciled on commit().
+    private int batchDepth;
+    @Nullable private List<RouterTransaction> batchedBackstack;
+    @Nullable private List<RouterTransaction> batchedAdditions;
+    @Nullable private ControllerChangeHandler batchedChangeHandler;
+    private boolean hasBatchedChangeHandler;
+    private boolean batchDiscarded;
+
+    private final Map<String, Controller> prewarmedControllers = new LinkedHashMap<>();
+    private int prewarmLimit = DEFAULT_PREWARM_LIMIT;
+
+    // Detached views retained with RETAIN_DETACH_ADAPTIVE, in least recently used order. Only used on the root router.
+    private final Map<String, Controller> retainedViews = new LinkedHashMap<>(16, 0.75f, true);
+    private int retainedViewLimit = DEFAULT_RETAINED_VIEW_LIMIT;
 
     private PopRootControllerMode popRootControllerMode = PopRootControllerMode.POP_ROOT_CONTROLLER_BUT_NOT_VIEW;
+    @Nullable private PopRootControllerMode savedPopRootControllerMode;
+    private boolean compactSavedStateEnabled;
     boolean containerFullyAttached = false;
     boolean isActivityStopped = false;
 
@@ -113,7 +166,7 @@ public abstract class Router {
     public boolean popCurrentController() {
         ThreadUtils.ensureMainThread();
 
-        RouterTransaction transaction = backstack.peek();
+        RouterTransaction transaction = batchedBackstack != null ? peekBatched() : backstack.peek();
         if (transaction == null) {
             throw new IllegalStateException("Trying to pop the current controller when there are none on the backstack.");
         }
@@ -130,6 +183,10 @@ public abstract class Router {
     public boolean popController(@NonNull Controller controller) {
         ThreadUtils.ensureMainThread();
 
+        if (batchedBackstack != null) {
+            return popBatchedController(controller);
+        }
+
         RouterTransaction topTransaction = backstack.peek();
         boolean poppingTopController = topTransaction != null && topTransaction.controller() == controller;
 
@@ -145,7 +202,7 @@ public abstract class Router {
 
             while (iterator.hasNext()) {
                 RouterTransaction transaction = iterator.next();
-                if (transaction.controller() == controller) {
+                if (transaction.getCreatedController() == controller) {
                     trackDestroyingController(transaction);
                     iterator.remove();
                     removedTransaction = transaction;
@@ -179,6 +236,11 @@ public abstract class Router {
     public void pushController(@NonNull RouterTransaction transaction) {
         ThreadUtils.ensureMainThread();
 
+        if (batchedBackstack != null) {
+            pushBatched(transaction);
+            return;
+        }
+
         RouterTransaction from = backstack.peek();
         pushToBackstack(transaction);
         performControllerChange(transaction, from, true);
@@ -195,6 +257,14 @@ public abstract class Router {
     public void replaceTopController(@NonNull RouterTransaction transaction) {
         ThreadUtils.ensureMainThread();
 
+        if (batchedBackstack != null) {
+            if (!batchedBackstack.isEmpty()) {
+                batchedBackstack.remove(batchedBackstack.size() - 1);
+            }
+            pushBatched(transaction);
+            return;
+        }
+
         RouterTransaction topTransaction = backstack.peek();
         if (!backstack.isEmpty()) {
             trackDestroyingController(backstack.pop());
@@ -221,6 +291,7 @@ public abstract class Router {
     }
 
     void destroy(boolean popViews) {
+        trimPrewarmedControllers(0);
         popRootControllerMode = PopRootControllerMode.POP_ROOT_CONTROLLER_AND_VIEW;
         final List<RouterTransaction> poppedControllers = backstack.popAll();
         trackDestroyingControllers(poppedControllers);
@@ -272,6 +343,25 @@ public abstract class Router {
         return this;
     }
 
+    /**
+     * Returns whether or not this Router saves its backstack in the compact format.
+     */
+    public boolean isCompactSavedStateEnabled() {
+        return compactSavedStateEnabled;
+    }
+
+    /**
+     * Sets whether or not this Router should save its backstack, including all child routers, as a single compact
+     * byte array rather than as nested Bundles. This significantly reduces the size of the saved state for deep
+     * backstacks, which helps to stay clear of TransactionTooLargeExceptions. Either format can be restored
+     * regardless of this setting. Defaults to false.
+     */
+    @NonNull
+    public Router setCompactSavedStateEnabled(boolean compactSavedStateEnabled) {
+        this.compactSavedStateEnabled = compactSavedStateEnabled;
+        return this;
+    }
+
     /**
      * Pops all {@link Controller}s until only the root is left
      *
@@ -295,9 +385,9 @@ public abstract class Router {
     public boolean popToRoot(@Nullable ControllerChangeHandler changeHandler) {
         ThreadUtils.ensureMainThread();
 
-        if (backstack.getSize() > 1) {
+        if (getBackstackSize() > 1) {
             //noinspection ConstantConditions
-            popToTransaction(backstack.root(), changeHandler);
+            popToTransaction(batchedBackstack != null ? batchedBackstack.get(0) : backstack.root(), changeHandler);
             return true;
         } else {
             return false;
@@ -329,11 +419,10 @@ public abstract class Router {
     public boolean popToTag(@NonNull String tag, @Nullable ControllerChangeHandler changeHandler) {
         ThreadUtils.ensureMainThread();
 
-        for (RouterTransaction transaction : backstack) {
-            if (tag.equals(transaction.tag())) {
-                popToTransaction(transaction, changeHandler);
-                return true;
-            }
+        RouterTransaction transaction = batchedBackstack != null ? findBatchedByTag(tag) : backstack.findByTag(tag);
+        if (transaction != null) {
+            popToTransaction(transaction, changeHandler);
+            return true;
         }
         return false;
     }
@@ -360,13 +449,19 @@ public abstract class Router {
      */
     @Nullable
     public Controller getControllerWithInstanceId(@NonNull String instanceId) {
-        for (RouterTransaction transaction : backstack) {
-            Controller controllerWithId = transaction.controller().findController(instanceId);
-            if (controllerWithId != null) {
-                return controllerWithId;
-            }
+        // The root router keeps a registry of every Controller in its tree. Entries are validated
+        // before use, so we only need to fall back to walking the tree when it's missing or stale.
+        Router rootRouter = getRootRouter();
+        Controller registeredController = rootRouter.controllerRegistry.get(instanceId);
+        if (registeredController != null && hostsController(registeredController)) {
+            return registeredController;
         }
-        return null;
+
+        Controller controller = findControllerWithInstanceId(instanceId);
+        if (controller != null) {
+            rootRouter.controllerRegistry.put(instanceId, controller);
+        }
+        return controller;
     }
 
     /**
@@ -377,12 +472,8 @@ public abstract class Router {
      */
     @Nullable
     public Controller getControllerWithTag(@NonNull String tag) {
-        for (RouterTransaction transaction : backstack) {
-            if (tag.equals(transaction.tag())) {
-                return transaction.controller();
-            }
-        }
-        return null;
+        RouterTransaction transaction = backstack.findByTag(tag);
+        return transaction != null ? transaction.controller() : null;
     }
 
     /**
@@ -390,14 +481,19 @@ public abstract class Router {
      */
     @SuppressWarnings("WeakerAccess")
     public int getBackstackSize() {
-        return backstack.getSize();
+        return batchedBackstack != null ? batchedBackstack.size() : backstack.getSize();
     }
 
     /**
-     * Returns the current backstack, ordered from root to most recently pushed.
+     * Returns the current backstack, ordered from root to most recently pushed. If a batched transaction is
+     * in progress, this includes the operations that have not yet been committed.
      */
     @NonNull
     public List<RouterTransaction> getBackstack() {
+        if (batchedBackstack != null) {
+            return new ArrayList<>(batchedBackstack);
+        }
+
         List<RouterTransaction> list = new ArrayList<>(backstack.getSize());
         Iterator<RouterTransaction> backstackIterator = backstack.reverseIterator();
         while (backstackIterator.hasNext()) {
@@ -418,26 +514,44 @@ public abstract class Router {
     public void setBackstack(@NonNull List<RouterTransaction> newBackstack, @Nullable ControllerChangeHandler changeHandler) {
         ThreadUtils.ensureMainThread();
 
+        ConductorTracer tracer = Tracing.beginSection("Router.setBackstack", newBackstack);
+        try {
+            performSetBackstack(newBackstack, changeHandler);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    private void performSetBackstack(@NonNull List<RouterTransaction> newBackstack, @Nullable ControllerChangeHandler changeHandler) {
+        if (batchedBackstack != null) {
+            //noinspection ConstantConditions
+            batchedAdditions.addAll(newBackstack);
+            batchedBackstack.clear();
+            batchedBackstack.addAll(newBackstack);
+            batchedChangeHandler = changeHandler;
+            hasBatchedChangeHandler = true;
+            return;
+        }
+
         List<RouterTransaction> oldTransactions = getBackstack();
         List<RouterTransaction> oldVisibleTransactions = getVisibleTransactions(backstack.iterator(), false);
 
         removeAllExceptVisibleAndUnowned();
         ensureOrderedTransactionIndices(newBackstack);
-        ensureNoDuplicateControllers(newBackstack);
+        Set<Controller> newControllers = ensureNoDuplicateControllers(newBackstack);
 
         backstack.setBackstack(newBackstack);
 
+        // Diff the old and new backstacks in a single pass using identity sets rather than comparing
+        // every old transaction against every new one.
+        Set<RouterTransaction> oldTransactionSet = newIdentitySet(oldTransactions.size());
         List<RouterTransaction> transactionsToBeRemoved = new ArrayList<>();
         for (RouterTransaction oldTransaction : oldTransactions) {
-            boolean contains = false;
-            for (RouterTransaction newTransaction : newBackstack) {
-                if (oldTransaction.controller() == newTransaction.controller()) {
-                    contains = true;
-                    break;
-                }
-            }
+            oldTransactionSet.add(oldTransaction);
 
-            if (!contains) {
+            if (!newControllers.contains(oldTransaction.controller())) {
                 // Inform the controller that it will be destroyed soon
                 oldTransaction.controller().isBeingDestroyed = true;
                 transactionsToBeRemoved.add(oldTransaction);
@@ -453,10 +567,8 @@ public abstract class Router {
         }
 
         if (newBackstack.size() > 0) {
-            List<RouterTransaction> reverseNewBackstack = new ArrayList<>(newBackstack);
-            Collections.reverse(reverseNewBackstack);
-            List<RouterTransaction> newVisibleTransactions = getVisibleTransactions(reverseNewBackstack.iterator(), false);
-            boolean newRootRequiresPush = !(newVisibleTransactions.size() > 0 && oldTransactions.contains(newVisibleTransactions.get(0)));
+            List<RouterTransaction> newVisibleTransactions = getVisibleTransactions(reverseIterator(newBackstack), false);
+            boolean newRootRequiresPush = !(newVisibleTransactions.size() > 0 && oldTransactionSet.contains(newVisibleTransactions.get(0)));
 
             boolean visibleTransactionsChanged = !backstacksAreEqual(newVisibleTransactions, oldVisibleTransactions);
             if (visibleTransactionsChanged) {
@@ -467,18 +579,21 @@ public abstract class Router {
                 if (oldRootTransaction == null || oldRootTransaction.controller() != newRootTransaction.controller()) {
                     // Ensure the existing root controller is fully pushed to the view hierarchy
                     if (oldRootTransaction != null) {
-                        ControllerChangeHandler.completeHandlerImmediately(oldRootTransaction.controller().getInstanceId());
+                        ControllerChangeHandler.completeHandlerImmediately(oldRootTransaction.controller());
                     }
                     performControllerChange(newRootTransaction, oldRootTransaction, newRootRequiresPush, changeHandler);
                 }
 
+                Set<RouterTransaction> newVisibleSet = newIdentitySet(newVisibleTransactions);
+                Set<RouterTransaction> oldVisibleSet = newIdentitySet(oldVisibleTransactions);
+
                 // Remove all visible controllers that were previously on the backstack
                 for (int i = oldVisibleTransactions.size() - 1; i > 0; i--) {
                     RouterTransaction transaction = oldVisibleTransactions.get(i);
-                    if (!newVisibleTransactions.contains(transaction)) {
+                    if (!newVisibleSet.contains(transaction)) {
                         ControllerChangeHandler localHandler = changeHandler != null ? changeHandler.copy() : new SimpleSwapChangeHandler();
                         localHandler.setForceRemoveViewOnPush(true);
-                        ControllerChangeHandler.completeHandlerImmediately(transaction.controller().getInstanceId());
+                        ControllerChangeHandler.completeHandlerImmediately(transaction.controller());
 
                         if (transaction.controller().view != null) {
                             performControllerChange(null, transaction, newRootRequiresPush, localHandler);
@@ -489,7 +604,7 @@ public abstract class Router {
                 // Add any new controllers to the backstack
                 for (int i = 1; i < newVisibleTransactions.size(); i++) {
                     RouterTransaction transaction = newVisibleTransactions.get(i);
-                    if (!oldVisibleTransactions.contains(transaction)) {
+                    if (!oldVisibleSet.contains(transaction)) {
                         performControllerChange(transaction, newVisibleTransactions.get(i - 1), true, transaction.pushChangeHandler());
                     }
                 }
@@ -500,7 +615,7 @@ public abstract class Router {
             for (int i = oldVisibleTransactions.size() - 1; i >= 0; i--) {
                 RouterTransaction transaction = oldVisibleTransactions.get(i);
                 ControllerChangeHandler localHandler = changeHandler != null ? changeHandler.copy() : new SimpleSwapChangeHandler();
-                ControllerChangeHandler.completeHandlerImmediately(transaction.controller().getInstanceId());
+                ControllerChangeHandler.completeHandlerImmediately(transaction.controller());
                 performControllerChange(null, transaction, false, localHandler);
             }
         }
@@ -508,18 +623,21 @@ public abstract class Router {
         // Destroy all old controllers that are no longer on the backstack. We don't do this when we initially
         // set the backstack to prevent the possibility that they'll be destroyed before the controller
         // change handler runs.
-        for (RouterTransaction removedTransaction : transactionsToBeRemoved) {
-
-            // Still need to ensure the controller isn't queued up to be removed later on.
-            boolean willBeRemoved = false;
-            for (ChangeTransaction pendingTransaction : pendingControllerChanges) {
-                if (pendingTransaction.from == removedTransaction.controller()) {
-                    willBeRemoved = true;
+        if (!transactionsToBeRemoved.isEmpty()) {
+            // Still need to ensure the controllers aren't queued up to be removed later on. Changes that have
+            // already run are skipped, as nothing would destroy their controllers anymore.
+            List<ChangeTransaction> unrunChanges = pendingControllerChanges.subList(pendingChangeIndex, pendingControllerChanges.size());
+            Set<Controller> pendingRemovals = newIdentitySet(unrunChanges.size());
+            for (ChangeTransaction pendingTransaction : unrunChanges) {
+                if (pendingTransaction.from != null) {
+                    pendingRemovals.add(pendingTransaction.from);
                 }
             }
 
-            if (!willBeRemoved) {
-                removedTransaction.controller().destroy();
+            for (RouterTransaction removedTransaction : transactionsToBeRemoved) {
+                if (!pendingRemovals.contains(removedTransaction.controller())) {
+                    removedTransaction.controller().destroy();
+                }
             }
         }
     }
@@ -531,6 +649,239 @@ public abstract class Router {
         return getBackstackSize() > 0;
     }
 
+    /**
+     * Starts a batched transaction. Until the matching {@link #commit()} call, backstack operations such as
+     * {@link #pushController(RouterTransaction)}, {@link #popController(Controller)},
+     * {@link #replaceTopController(RouterTransaction)} and {@link #setBackstack(List, ControllerChangeHandler)}
+     * only update a pending backstack. Committing runs a single change from the current top {@link Controller}
+     * to the top of the resulting backstack, so intermediate controllers are never inflated.
+     *
+     * Batches may be nested, in which case only the outermost {@link #commit()} call applies the changes.
+     */
+    @UiThread
+    public void beginTransaction() {
+        ThreadUtils.ensureMainThread();
+
+        if (batchDepth++ == 0) {
+            batchedBackstack = getBackstack();
+            batchedAdditions = new ArrayList<>();
+            batchedChangeHandler = null;
+            hasBatchedChangeHandler = false;
+            batchDiscarded = false;
+        }
+    }
+
+    /**
+     * Commits a batched transaction started with {@link #beginTransaction()}. Nothing is applied if this batch, or
+     * a batch nested in it, has been discarded.
+     */
+    @UiThread
+    public void commit() {
+        ThreadUtils.ensureMainThread();
+
+        if (batchDepth == 0) {
+            throw new IllegalStateException("Trying to commit a batched transaction without calling beginTransaction() first.");
+        }
+
+        if (--batchDepth > 0) {
+            return;
+        }
+
+        if (batchDiscarded) {
+            clearBatch();
+            return;
+        }
+
+        List<RouterTransaction> newBackstack = batchedBackstack;
+        List<RouterTransaction> additions = batchedAdditions;
+        ControllerChangeHandler changeHandler = hasBatchedChangeHandler ? batchedChangeHandler : getBatchedChangeHandler(newBackstack);
+        clearBatch();
+
+        // Controllers that were added and removed again within the batch never make it onto the real backstack,
+        // so they have to be destroyed here rather than by setBackstack.
+        //noinspection ConstantConditions
+        Set<Controller> discardedControllers = newIdentitySet(additions.size());
+        for (RouterTransaction transaction : additions) {
+            if (!backstack.contains(transaction.controller())) {
+                discardedControllers.add(transaction.controller());
+            }
+        }
+
+        //noinspection ConstantConditions
+        setBackstack(newBackstack, changeHandler);
+
+        for (Controller controller : discardedControllers) {
+            if (!backstack.contains(controller) && !controller.isBeingDestroyed()) {
+                controller.destroy();
+            }
+        }
+    }
+
+    /**
+     * Ends a batched transaction started with {@link #beginTransaction()} without applying any of its operations.
+     * Discarding a nested batch discards the batches it's nested in as well.
+     */
+    @UiThread
+    public void discardTransaction() {
+        ThreadUtils.ensureMainThread();
+
+        if (batchDepth == 0) {
+            throw new IllegalStateException("Trying to discard a batched transaction without calling beginTransaction() first.");
+        }
+
+        batchDiscarded = true;
+        if (--batchDepth == 0) {
+            clearBatch();
+        }
+    }
+
+    private void clearBatch() {
+        batchedBackstack = null;
+        batchedAdditions = null;
+        batchedChangeHandler = null;
+        hasBatchedChangeHandler = false;
+        batchDiscarded = false;
+    }
+
+    /**
+     * Creates the view for the passed transaction's {@link Controller} ahead of time, so that it can be pushed
+     * without having to be inflated first. The view is kept detached until the Controller is pushed or set as
+     * part of a new backstack. Prewarmed views that haven't been used are released once more than
+     * {@link #setPrewarmLimit(int) the prewarm limit} have been created, or when the system is low on memory.
+     *
+     * @param transaction The transaction that is expected to be pushed next
+     */
+    @UiThread
+    public void prewarm(@NonNull RouterTransaction transaction) {
+        ThreadUtils.ensureMainThread();
+
+        Controller controller = transaction.controller();
+        if (controller.isBeingDestroyed() || controller.isDestroyed()) {
+            throw new IllegalStateException("Trying to prewarm a controller that has already been destroyed. (" + controller.getClass().getSimpleName() + ")");
+        }
+
+        if (container == null || prewarmLimit == 0 || backstack.contains(controller) || prewarmedControllers.containsKey(controller.getInstanceId())) {
+            return;
+        }
+
+        setRouterOnController(controller);
+        controller.inflate(container);
+
+        prewarmedControllers.put(controller.getInstanceId(), controller);
+        trimPrewarmedControllers(prewarmLimit);
+    }
+
+    /**
+     * Sets the maximum number of unused prewarmed views this Router will hold on to. Defaults to 2.
+     *
+     * @see #prewarm(RouterTransaction)
+     */
+    public void setPrewarmLimit(int prewarmLimit) {
+        if (prewarmLimit < 0) {
+            throw new IllegalArgumentException("The prewarm limit can't be negative.");
+        }
+
+        this.prewarmLimit = prewarmLimit;
+        trimPrewarmedControllers(prewarmLimit);
+    }
+
+    /**
+     * This should be called by the host when its onTrimMemory method is called. Releases any views that are
+     * being held on to for later use, such as those created by {@link #prewarm(RouterTransaction)}.
+     *
+     * @param level The onTrimMemory level
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimPrewarmedControllers(0);
+            trimRetainedViews(0);
+        }
+
+        for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
+            for (Router childRouter : transaction.controller().getChildRouters()) {
+                childRouter.onTrimMemory(level);
+            }
+        }
+    }
+
+    /**
+     * This should be called by the host when its onLowMemory method is called.
+     */
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Sets the maximum number of detached views that {@link Controller}s using
+     * {@link Controller.RetainViewMode#RETAIN_DETACH_ADAPTIVE} may retain across this Router's entire tree.
+     * Defaults to 3. This is always applied to the root Router, so calling it on a child Router has the
+     * same effect as calling it on its root.
+     */
+    public void setRetainedViewLimit(int retainedViewLimit) {
+        if (retainedViewLimit < 0) {
+            throw new IllegalArgumentException("The retained view limit can't be negative.");
+        }
+
+        Router rootRouter = getRootRouter();
+        rootRouter.retainedViewLimit = retainedViewLimit;
+        rootRouter.trimRetainedViews(retainedViewLimit);
+    }
+
+    /**
+     * Returns the maximum number of detached views that may be retained across this Router's tree.
+     *
+     * @see #setRetainedViewLimit(int)
+     */
+    public int getRetainedViewLimit() {
+        return getRootRouter().retainedViewLimit;
+    }
+
+    final void onViewRetained(@NonNull Controller controller) {
+        Router rootRouter = getRootRouter();
+        rootRouter.retainedViews.put(controller.getInstanceId(), controller);
+        rootRouter.trimRetainedViews(rootRouter.retainedViewLimit);
+    }
+
+    final void onRetainedViewReleased(@NonNull Controller controller) {
+        getRootRouter().retainedViews.remove(controller.getInstanceId());
+    }
+
+    private void trimRetainedViews(int maxSize) {
+        while (retainedViews.size() > maxSize) {
+            Iterator<Controller> iterator = retainedViews.values().iterator();
+            Controller controller = iterator.next();
+            iterator.remove();
+            controller.releaseDetachedView();
+        }
+    }
+
+    void trimPrewarmedControllers(int maxSize) {
+        Iterator<Controller> iterator = prewarmedControllers.values().iterator();
+        while (prewarmedControllers.size() > maxSize && iterator.hasNext()) {
+            Controller controller = iterator.next();
+            iterator.remove();
+            releasePrewarmedController(controller);
+        }
+    }
+
+    // Undoes everything prewarm() set up, so that a Controller that's never pushed isn't left registered with this
+    // Router or holding on to its context.
+    private void releasePrewarmedController(@NonNull Controller controller) {
+        controller.releaseDetachedView();
+
+        Activity activity = getActivity();
+        if (activity != null) {
+            controller.onContextUnavailable(activity);
+        }
+
+        unregisterController(controller);
+        controller.clearRouter();
+    }
+
     /**
      * Adds a listener for all of this Router's {@link Controller} change events
      *
@@ -538,11 +889,39 @@ public abstract class Router {
      */
     @SuppressWarnings("WeakerAccess")
     public void addChangeListener(@NonNull ControllerChangeListener changeListener) {
-        if (!changeListeners.contains(changeListener)) {
-            changeListeners.add(changeListener);
+        if (indexOfChangeListener(changeListener) < 0) {
+            ControllerChangeListener[] listeners = Arrays.copyOf(changeListeners, changeListeners.length + 1);
+            listeners[listeners.length - 1] = changeListener;
+            changeListeners = listeners;
         }
     }
 
+    /**
+     * Sets the {@link NavigationMetrics} that this Router's {@link Controller} changes should be measured by, or
+     * null to stop measuring them.
+     */
+    public void setNavigationMetrics(@Nullable NavigationMetrics navigationMetrics) {
+        this.navigationMetrics = navigationMetrics;
+    }
+
+    @Nullable
+    public NavigationMetrics getNavigationMetrics() {
+        return navigationMetrics;
+    }
+
+    /**
+     * Sets the {@link ChangeScheduler} that decides when this Router's queued changes are run, or null to run them
+     * all as soon as its container is ready.
+     */
+    public void setChangeScheduler(@Nullable ChangeScheduler changeScheduler) {
+        this.changeScheduler = changeScheduler;
+    }
+
+    @Nullable
+    public ChangeScheduler getChangeScheduler() {
+        return changeScheduler;
+    }
+
     /**
      * Removes a previously added listener
      *
@@ -550,7 +929,22 @@ public abstract class Router {
      */
     @SuppressWarnings("WeakerAccess")
     public void removeChangeListener(@NonNull ControllerChangeListener changeListener) {
-        changeListeners.remove(changeListener);
+        int index = indexOfChangeListener(changeListener);
+        if (index >= 0) {
+            ControllerChangeListener[] listeners = new ControllerChangeListener[changeListeners.length - 1];
+            System.arraycopy(changeListeners, 0, listeners, 0, index);
+            System.arraycopy(changeListeners, index + 1, listeners, index, listeners.length - index);
+            changeListeners = listeners;
+        }
+    }
+
+    private int indexOfChangeListener(@NonNull ControllerChangeListener changeListener) {
+        for (int i = 0; i < changeListeners.length; i++) {
+            if (changeListeners[i].equals(changeListener)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -564,9 +958,9 @@ public abstract class Router {
         while (backstackIterator.hasNext()) {
             RouterTransaction transaction = backstackIterator.next();
 
-            if (transaction.controller().getNeedsAttach()) {
+            if (transaction.needsAttach()) {
                 performControllerChange(transaction, null, true, new SimpleSwapChangeHandler(false));
-            } else {
+            } else if (transaction.getCreatedController() != null) {
                 setRouterOnController(transaction.controller());
             }
         }
@@ -583,6 +977,10 @@ public abstract class Router {
         isActivityStopped = false;
 
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().activityStarted(activity);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -593,6 +991,10 @@ public abstract class Router {
 
     public final void onActivityResumed(@NonNull Activity activity) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().activityResumed(activity);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -603,6 +1005,10 @@ public abstract class Router {
 
     public final void onActivityPaused(@NonNull Activity activity) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().activityPaused(activity);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -613,6 +1019,10 @@ public abstract class Router {
 
     public final void onActivityStopped(@NonNull Activity activity) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().activityStopped(activity);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -624,10 +1034,15 @@ public abstract class Router {
     }
 
     public void onActivityDestroyed(@NonNull Activity activity, boolean isConfigurationChange) {
+        trimPrewarmedControllers(0);
         prepareForContainerRemoval();
-        changeListeners.clear();
+        changeListeners = ControllerChangeHandler.EMPTY_LISTENERS;
 
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().activityDestroyed(activity);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -649,9 +1064,14 @@ public abstract class Router {
 
     public void prepareForHostDetach() {
         pendingControllerChanges.clear(); // rely on backstack based restoration in rebindIfNeeded
+        pendingChangeIndex = 0;
 
         for (RouterTransaction transaction : backstack) {
-            if (ControllerChangeHandler.completeHandlerImmediately(transaction.controller().getInstanceId())) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
+            if (ControllerChangeHandler.completeHandlerImmediately(transaction.controller())) {
                 transaction.controller().setNeedsAttach(true);
             }
 
@@ -663,24 +1083,231 @@ public abstract class Router {
         Bundle backstackState = new Bundle();
         backstack.saveInstanceState(backstackState);
 
-        outState.putParcelable(KEY_BACKSTACK, backstackState);
+        if (!compactSavedStateEnabled || !putCompactBackstack(outState, backstackState)) {
+            outState.putParcelable(KEY_BACKSTACK, backstackState);
+        }
         outState.putInt(KEY_POP_ROOT_CONTROLLER_MODE, popRootControllerMode.ordinal());
+        savedPopRootControllerMode = popRootControllerMode;
+    }
+
+    /**
+     * Saves this Router's state like {@link #saveInstanceState(Bundle)}, but for something other than the host
+     * Activity. Its Controllers' views are saved as they currently are without being treated as saved, so that
+     * later changes to them are still saved before they're destroyed.
+     */
+    void saveTransientInstanceState(@NonNull Bundle outState) {
+        Controller.transientSaveDepth++;
+        try {
+            saveInstanceState(outState);
+        } finally {
+            Controller.transientSaveDepth--;
+        }
+    }
+
+    private static boolean putCompactBackstack(@NonNull Bundle outState, @NonNull Bundle backstackState) {
+        try {
+            outState.putByteArray(KEY_BACKSTACK_COMPACT, CompactBundleCodec.encode(backstackState));
+            return true;
+        } catch (RuntimeException e) {
+            // Some state can't be flattened (ex: Binders), so fall back to saving the Bundles as they are.
+            return false;
+        }
+    }
+
+    /**
+     * Returns a description of this Router and everything in it, including its child Routers, for debugging leaks
+     * and over-retention. The same description is included for every Router in an Activity when running
+     * {@code adb shell dumpsys activity}. The format isn't stable and shouldn't be parsed.
+     */
+    @NonNull
+    public String dumpTree() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        dumpTree("", writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    /**
+     * Writes the description returned by {@link #dumpTree()} to the passed writer, with each line starting with
+     * {@code prefix}.
+     */
+    public void dumpTree(@NonNull String prefix, @NonNull PrintWriter writer) {
+        writer.print(prefix);
+        writer.print(getClass().getSimpleName());
+        writer.print("{container=");
+        writer.print(describeViewId(container));
+        writer.print(", hasHost=");
+        writer.print(hasHost());
+        writer.print(", backstack=");
+        writer.print(backstack.getSize());
+        writer.print(", pendingChanges=");
+        writer.print(pendingControllerChanges.size() - pendingChangeIndex);
+        writer.print(", destroying=");
+        writer.print(destroyingControllers.size());
+        writer.print(", retainedViews=");
+        writer.print(retainedViews.size());
+        writer.print(", prewarmed=");
+        writer.print(prewarmedControllers.size());
+        writer.println("}");
+
+        String transactionPrefix = prefix + "  ";
+        int index = 0;
+        for (RouterTransaction transaction : backstack) {
+            writer.print(transactionPrefix);
+            writer.print("#");
+            writer.print(index++);
+            writer.print(" ");
+            writer.print(transaction.getControllerClassName());
+            writer.print("{id=");
+            writer.print(transaction.getInstanceId());
+            if (transaction.tag() != null) {
+                writer.print(", tag=");
+                writer.print(transaction.tag());
+            }
+
+            Controller controller = transaction.getCreatedController();
+            if (controller == null) {
+                writer.print(", not created, needsAttach=");
+                writer.print(transaction.needsAttach());
+                writer.println("}");
+                continue;
+            }
+
+            writer.print(", state=");
+            if (controller.isDestroyed()) {
+                writer.print("destroyed");
+            } else if (controller.isBeingDestroyed()) {
+                writer.print("destroying");
+            } else {
+                writer.print(controller.isAttached() ? "attached" : "detached");
+            }
+            writer.print(", view=");
+            View view = controller.getView();
+            if (view == null) {
+                writer.print("none");
+            } else {
+                writer.print(controller.isAttached() ? "attached" : "retained");
+                writer.print(" (");
+                writer.print(countViews(view));
+                writer.print(" views)");
+            }
+            writer.print(", needsAttach=");
+            writer.print(controller.getNeedsAttach());
+            writer.print(", retainViewMode=");
+            writer.print(controller.getRetainViewMode());
+            writer.println("}");
+
+            for (Router childRouter : controller.getChildRouters()) {
+                childRouter.dumpTree(transactionPrefix + "  ", writer);
+            }
+        }
+    }
+
+    @NonNull
+    private static String describeViewId(@Nullable View view) {
+        if (view == null) {
+            return "none";
+        }
+
+        int id = view.getId();
+        String description = "0x" + Integer.toHexString(id);
+        if (id != View.NO_ID) {
+            try {
+                description += " (" + view.getResources().getResourceName(id) + ")";
+            } catch (Resources.NotFoundException e) {
+                // Generated IDs don't have names.
+            }
+        }
+        return description;
+    }
+
+    private static int countViews(@NonNull View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0; i < viewGroup.getChildCount(); i++) {
+                count += countViews(viewGroup.getChildAt(i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the backstack state from a Bundle written by {@link #saveInstanceState(Bundle)}, decoding it if it was
+     * saved compactly.
+     */
+    @Nullable
+    static Bundle getBackstackState(@NonNull Bundle savedInstanceState) {
+        byte[] compactBackstack = savedInstanceState.getByteArray(KEY_BACKSTACK_COMPACT);
+        if (compactBackstack != null) {
+            return CompactBundleCodec.decode(compactBackstack, Router.class.getClassLoader());
+        } else {
+            return savedInstanceState.getParcelable(KEY_BACKSTACK);
+        }
+    }
+
+    // Replaces the backstack state in a Bundle written by saveInstanceState, keeping the format it was saved in.
+    static void putBackstackState(@NonNull Bundle savedInstanceState, @NonNull Bundle backstackState) {
+        if (!savedInstanceState.containsKey(KEY_BACKSTACK_COMPACT) || !putCompactBackstack(savedInstanceState, backstackState)) {
+            savedInstanceState.remove(KEY_BACKSTACK_COMPACT);
+            savedInstanceState.putParcelable(KEY_BACKSTACK, backstackState);
+        }
+    }
+
+    /**
+     * Returns a breakdown of how many bytes each {@link Controller} in this Router, including those in child
+     * Routers, takes up in its saved state. This saves the Router's state in order to measure it, so it shouldn't
+     * be called more often than needed.
+     */
+    @NonNull
+    public SavedStateReport getSavedStateReport() {
+        ThreadUtils.ensureMainThread();
+
+        Bundle savedState = new Bundle();
+        saveTransientInstanceState(savedState);
+        return SavedStateReport.fromRouterState(savedState);
+    }
+
+    /**
+     * Returns true if nothing that goes into this Router's saved state has changed since it was last saved.
+     */
+    boolean isSavedStateCurrent() {
+        if (backstack.getHasUnsavedChanges() || popRootControllerMode != savedPopRootControllerMode) {
+            return false;
+        }
+
+        for (RouterTransaction transaction : backstack) {
+            // Controllers that haven't been created still hold the exact state they were restored from.
+            if (transaction.getCreatedController() != null && !transaction.controller().isSavedStateCurrent()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void restoreInstanceState(@NonNull Bundle savedInstanceState) {
-        Bundle backstackBundle = savedInstanceState.getParcelable(KEY_BACKSTACK);
         //noinspection ConstantConditions
-        backstack.restoreInstanceState(backstackBundle);
+        backstack.restoreInstanceState(getBackstackState(savedInstanceState), Conductor.getLazyRestoreEnabled());
         popRootControllerMode = PopRootControllerMode.values()[savedInstanceState.getInt(KEY_POP_ROOT_CONTROLLER_MODE)];
 
         Iterator<RouterTransaction> backstackIterator = backstack.reverseIterator();
         while (backstackIterator.hasNext()) {
-            setRouterOnController(backstackIterator.next().controller());
+            RouterTransaction transaction = backstackIterator.next();
+            if (transaction.getCreatedController() != null) {
+                setRouterOnController(transaction.controller());
+            } else {
+                transaction.setLazyRouter(this);
+            }
         }
     }
 
     public final void onCreateOptionsMenu(@NonNull Menu menu, @NonNull MenuInflater inflater) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().createOptionsMenu(menu, inflater);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -691,6 +1318,10 @@ public abstract class Router {
 
     public final void onPrepareOptionsMenu(@NonNull Menu menu) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             transaction.controller().prepareOptionsMenu(menu);
 
             for (Router childRouter : transaction.controller().getChildRouters()) {
@@ -701,6 +1332,10 @@ public abstract class Router {
 
     public final boolean onOptionsItemSelected(@NonNull MenuItem item) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             if (transaction.controller().optionsItemSelected(item)) {
                 return true;
             }
@@ -715,6 +1350,17 @@ public abstract class Router {
     }
 
     private void popToTransaction(@NonNull RouterTransaction transaction, @Nullable ControllerChangeHandler changeHandler) {
+        if (batchedBackstack != null) {
+            int index = batchedBackstack.indexOf(transaction);
+            if (index == -1) {
+                return;
+            }
+            batchedBackstack.subList(index + 1, batchedBackstack.size()).clear();
+            batchedChangeHandler = changeHandler;
+            hasBatchedChangeHandler = changeHandler != null;
+            return;
+        }
+
         if (backstack.getSize() > 0) {
             RouterTransaction topTransaction = backstack.peek();
 
@@ -757,26 +1403,38 @@ public abstract class Router {
 
     void onContextAvailable() {
         for (RouterTransaction transaction : backstack) {
-            transaction.controller().onContextAvailable();
+            if (transaction.getCreatedController() != null) {
+                transaction.controller().onContextAvailable();
+            }
         }
     }
 
     void onContextUnavailable(@NonNull Context context) {
         for (RouterTransaction transaction : backstack) {
-            transaction.controller().onContextUnavailable(context);
+            if (transaction.getCreatedController() != null) {
+                transaction.controller().onContextUnavailable(context);
+            }
         }
         for (Controller controller : destroyingControllers) {
             controller.onContextUnavailable(context);
         }
     }
 
+    /**
+     * Returns the Controllers in this Router's backstack, from top to root. Entries whose Controllers haven't been
+     * created yet (see {@link Conductor#getLazyRestoreEnabled()}) are left out rather than created, so this can hold
+     * fewer Controllers than {@link #getBackstackSize()}.
+     */
     @NonNull
     final List<Controller> getControllers() {
         List<Controller> controllers = new ArrayList<>(backstack.getSize());
 
         Iterator<RouterTransaction> backstackIterator = backstack.reverseIterator();
         while (backstackIterator.hasNext()) {
-            controllers.add(backstackIterator.next().controller());
+            Controller controller = backstackIterator.next().getCreatedController();
+            if (controller != null) {
+                controllers.add(controller);
+            }
         }
 
         return controllers;
@@ -785,6 +1443,10 @@ public abstract class Router {
     @Nullable
     public final Boolean handleRequestedPermission(@NonNull String permission) {
         for (RouterTransaction transaction : backstack) {
+            if (transaction.getCreatedController() == null) {
+                continue;
+            }
+
             if (transaction.controller().didRequestPermission(permission)) {
                 return transaction.controller().shouldShowRequestPermissionRationale(permission);
             }
@@ -845,7 +1507,8 @@ public abstract class Router {
             throw new IllegalStateException("Trying to push a controller that has already been destroyed. (" + to.getClass().getSimpleName() + ")");
         }
 
-        final ChangeTransaction transaction = new ChangeTransaction(to, from, isPush, container, changeHandler, new ArrayList<>(changeListeners));
+        final ChangeTransaction transaction = ChangeTransaction.obtain(to, from, isPush, container, changeHandler, changeListeners);
+        transaction.metrics = navigationMetrics;
 
         if (pendingControllerChanges.size() > 0) {
             // If we already have changes queued up (awaiting full container attach), queue this one up as well so they don't happen
@@ -853,7 +1516,10 @@ public abstract class Router {
             if (to != null) {
                 to.setNeedsAttach(true);
             }
-            pendingControllerChanges.add(transaction);
+            if (changeScheduler == null || !collapseIntoLastPendingChange(transaction)) {
+                transaction.queued = true;
+                pendingControllerChanges.add(transaction);
+            }
         } else if (from != null && (changeHandler == null || changeHandler.removesFromViewOnPush()) && !containerFullyAttached) {
             // If the change handler will remove the from view, we have to make sure the container is fully attached first so we avoid NPEs
             // within ViewGroup (details on issue #287). Post this to the container to ensure the attach is complete before we try to remove
@@ -861,6 +1527,7 @@ public abstract class Router {
             if (to != null) {
                 to.setNeedsAttach(true);
             }
+            transaction.queued = true;
             pendingControllerChanges.add(transaction);
             if (container != null) {
                 container.post(new Runnable() {
@@ -876,12 +1543,67 @@ public abstract class Router {
     }
 
     void performPendingControllerChanges() {
-        // We're intentionally using dynamic size checking (list.size()) here so we can account for changes
-        // that occur during this loop (ex: if a controller is popped from within onAttach)
-        for (int i = 0; i < pendingControllerChanges.size(); i++) {
-            ControllerChangeHandler.executeChange(pendingControllerChanges.get(i));
+        if (changeScheduler != null) {
+            if (pendingChangeQueue.hasNext()) {
+                changeScheduler.schedule(pendingChangeQueue);
+            }
+            return;
+        }
+
+        // We're intentionally using dynamic size checking here so we can account for changes that occur
+        // during this loop (ex: if a controller is popped from within onAttach)
+        while (pendingChangeQueue.hasNext()) {
+            runNextPendingControllerChange();
+        }
+    }
+
+    private void runNextPendingControllerChange() {
+        ChangeTransaction transaction = pendingControllerChanges.get(pendingChangeIndex++);
+        ConductorTracer tracer = Tracing.beginSection("Router.runPendingControllerChange", transaction.to);
+        try {
+            ControllerChangeHandler.executeChange(transaction);
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+
+        if (pendingChangeIndex >= pendingControllerChanges.size()) {
+            pendingControllerChanges.clear();
+            pendingChangeIndex = 0;
         }
-        pendingControllerChanges.clear();
+    }
+
+    /**
+     * Folds the passed push into the last queued change if that change is a push of the Controller being covered and
+     * hasn't run yet, as that Controller would only be shown for an instant. The covered Controller stays in the
+     * backstack without its view being created. Returns whether the push was folded in, in which case the passed
+     * transaction has been recycled.
+     */
+    private boolean collapseIntoLastPendingChange(@NonNull ChangeTransaction transaction) {
+        List<ChangeTransaction> unrunChanges = pendingControllerChanges.subList(pendingChangeIndex, pendingControllerChanges.size());
+        if (unrunChanges.isEmpty() || !transaction.isPush || transaction.to == null) {
+            return false;
+        }
+
+        ChangeTransaction last = unrunChanges.get(unrunChanges.size() - 1);
+        Controller covered = last.to;
+        if (!last.isPush || covered == null || covered != transaction.from || covered.getView() != null
+                || !removesFromViewOnPush(last.changeHandler) || !removesFromViewOnPush(transaction.changeHandler)) {
+            return false;
+        }
+
+        covered.setNeedsAttach(false);
+        last.to = transaction.to;
+        last.changeHandler = transaction.changeHandler;
+        last.listeners = transaction.listeners;
+        last.metrics = transaction.metrics;
+        transaction.recycle();
+        return true;
+    }
+
+    private static boolean removesFromViewOnPush(@Nullable ControllerChangeHandler changeHandler) {
+        return changeHandler == null || changeHandler.removesFromViewOnPush();
     }
 
     protected void pushToBackstack(@NonNull RouterTransaction entry) {
@@ -904,6 +1626,66 @@ public abstract class Router {
         }
     }
 
+    @Nullable
+    private RouterTransaction peekBatched() {
+        //noinspection ConstantConditions
+        return batchedBackstack.isEmpty() ? null : batchedBackstack.get(batchedBackstack.size() - 1);
+    }
+
+    @Nullable
+    private RouterTransaction findBatchedByTag(@NonNull String tag) {
+        //noinspection ConstantConditions
+        for (int i = batchedBackstack.size() - 1; i >= 0; i--) {
+            RouterTransaction transaction = batchedBackstack.get(i);
+            if (tag.equals(transaction.tag())) {
+                return transaction;
+            }
+        }
+        return null;
+    }
+
+    private void pushBatched(@NonNull RouterTransaction transaction) {
+        //noinspection ConstantConditions
+        batchedBackstack.add(transaction);
+        //noinspection ConstantConditions
+        batchedAdditions.add(transaction);
+        batchedChangeHandler = null;
+        hasBatchedChangeHandler = false;
+    }
+
+    private boolean popBatchedController(@NonNull Controller controller) {
+        //noinspection ConstantConditions
+        boolean hadTransactions = !batchedBackstack.isEmpty();
+        for (int i = batchedBackstack.size() - 1; i >= 0; i--) {
+            if (batchedBackstack.get(i).getCreatedController() == controller) {
+                batchedBackstack.remove(i);
+                batchedChangeHandler = null;
+                hasBatchedChangeHandler = false;
+                break;
+            }
+        }
+
+        if (popRootControllerMode == PopRootControllerMode.POP_ROOT_CONTROLLER_AND_VIEW) {
+            return hadTransactions;
+        } else {
+            return !batchedBackstack.isEmpty();
+        }
+    }
+
+    // Picks the handler a batch would have used had its operations been run one at a time: the new top's push
+    // handler if it was just added, or the old top's pop handler if we're moving back down the backstack.
+    @Nullable
+    private ControllerChangeHandler getBatchedChangeHandler(@NonNull List<RouterTransaction> newBackstack) {
+        RouterTransaction oldTop = backstack.peek();
+        RouterTransaction newTop = newBackstack.isEmpty() ? null : newBackstack.get(newBackstack.size() - 1);
+
+        if (newTop != null && !backstack.contains(newTop.controller())) {
+            return newTop.pushChangeHandler();
+        } else {
+            return oldTop != null ? oldTop.popChangeHandler() : null;
+        }
+    }
+
     private void trackDestroyingControllers(@NonNull List<RouterTransaction> transactions) {
         for (RouterTransaction transaction : transactions) {
             trackDestroyingController(transaction);
@@ -911,7 +1693,7 @@ public abstract class Router {
     }
 
     private void removeAllExceptVisibleAndUnowned() {
-        List<View> views = new ArrayList<>();
+        Set<View> views = newIdentitySet(container.getChildCount());
 
         for (RouterTransaction transaction : getVisibleTransactions(backstack.iterator(), false)) {
             if (transaction.controller().getView() != null) {
@@ -950,18 +1732,17 @@ public abstract class Router {
         }
     }
 
-    private void ensureNoDuplicateControllers(List<RouterTransaction> backstack) {
-        for (int i = 0; i < backstack.size(); i++) {
-            Controller controller = backstack.get(i).controller();
-            for (int j = i + 1; j < backstack.size(); j++) {
-                if (backstack.get(j).controller() == controller) {
-                    throw new IllegalStateException("Trying to push the same controller to the backstack more than once.");
-                }
+    private Set<Controller> ensureNoDuplicateControllers(List<RouterTransaction> backstack) {
+        Set<Controller> controllers = newIdentitySet(backstack.size());
+        for (RouterTransaction transaction : backstack) {
+            if (!controllers.add(transaction.controller())) {
+                throw new IllegalStateException("Trying to push the same controller to the backstack more than once.");
             }
         }
+        return controllers;
     }
 
-    private void addRouterViewsToList(@NonNull Router router, @NonNull List<View> list) {
+    private void addRouterViewsToList(@NonNull Router router, @NonNull Collection<View> list) {
         for (Controller controller : router.getControllers()) {
             if (controller.getView() != null) {
                 list.add(controller.getView());
@@ -995,6 +1776,36 @@ public abstract class Router {
         return transactions;
     }
 
+    private static <T> Set<T> newIdentitySet(int expectedSize) {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>(expectedSize));
+    }
+
+    private static <T> Set<T> newIdentitySet(@NonNull List<T> items) {
+        Set<T> set = newIdentitySet(items.size());
+        set.addAll(items);
+        return set;
+    }
+
+    private static <T> Iterator<T> reverseIterator(@NonNull List<T> list) {
+        final ListIterator<T> listIterator = list.listIterator(list.size());
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return listIterator.hasPrevious();
+            }
+
+            @Override
+            public T next() {
+                return listIterator.previous();
+            }
+
+            @Override
+            public void remove() {
+                listIterator.remove();
+            }
+        };
+    }
+
     private boolean backstacksAreEqual(List<RouterTransaction> lhs, List<RouterTransaction> rhs) {
         if (lhs.size() != rhs.size()) {
             return false;
@@ -1010,8 +1821,69 @@ public abstract class Router {
     }
 
     void setRouterOnController(@NonNull Controller controller) {
+        prewarmedControllers.remove(controller.getInstanceId());
         controller.setRouter(this);
         controller.onContextAvailable();
+        getRootRouter().controllerRegistry.put(controller.getInstanceId(), controller);
+    }
+
+    @Nullable
+    final Controller findControllerWithInstanceId(@NonNull String instanceId) {
+        RouterTransaction transaction = backstack.findByInstanceId(instanceId);
+        if (transaction != null) {
+            return transaction.controller();
+        }
+
+        for (RouterTransaction childTransaction : backstack) {
+            if (childTransaction.getCreatedController() == null) {
+                continue;
+            }
+
+            Controller controllerWithId = childTransaction.controller().findChildController(instanceId);
+            if (controllerWithId != null) {
+                return controllerWithId;
+            }
+        }
+
+        // Controllers that haven't been created yet can only be searched by creating them, so this is only done for
+        // the ones that had child Routers when they were saved.
+        for (RouterTransaction childTransaction : backstack) {
+            if (childTransaction.getCreatedController() == null && childTransaction.mayHostChildRouters()) {
+                Controller controllerWithId = childTransaction.controller().findChildController(instanceId);
+                if (controllerWithId != null) {
+                    return controllerWithId;
+                }
+            }
+        }
+        return null;
+    }
+
+    final void unregisterController(@NonNull Controller controller) {
+        Router rootRouter = getRootRouter();
+        if (rootRouter.controllerRegistry.get(controller.getInstanceId()) == controller) {
+            rootRouter.controllerRegistry.remove(controller.getInstanceId());
+        }
+    }
+
+    // Verifies that the passed Controller is still reachable from this Router by walking up through
+    // its host Controllers rather than down through the entire tree.
+    private boolean hostsController(@NonNull Controller controller) {
+        Controller current = controller;
+        while (current != null && !current.isDestroyed()) {
+            Router router = current.getRouter();
+            if (router == null || !router.backstack.contains(current)) {
+                return false;
+            } else if (router == this) {
+                return true;
+            }
+            current = router.getHostController();
+        }
+        return false;
+    }
+
+    @Nullable
+    Controller getHostController() {
+        return null;
     }
 
     abstract void invalidateOptionsMenu();
@@ -0,0 +1,22 @@
+package com.bluelinelabs.conductor
+
+import androidx.annotation.UiThread
+
+/**
+ * Runs [block] inside a batched transaction on this [Router]. All backstack operations performed in the
+ * block are coalesced into a single change from the current top [Controller] to the resulting top. If
+ * [block] throws, the batch is discarded and the backstack is left as it was.
+ *
+ * @see Router.beginTransaction
+ */
+@UiThread
+inline fun Router.batch(block: Router.() -> Unit) {
+  beginTransaction()
+  try {
+    block()
+  } catch (e: Throwable) {
+    discardTransaction()
+    throw e
+  }
+  commit()
+}
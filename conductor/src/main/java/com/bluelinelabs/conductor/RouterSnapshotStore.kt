@@ -0,0 +1,202 @@
+package com.bluelinelabs.conductor
+
+import android.content.Context
+import android.os.Build
+import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.view.ViewGroup
+import androidx.annotation.UiThread
+import com.bluelinelabs.conductor.ControllerChangeHandler.ControllerChangeListener
+import com.bluelinelabs.conductor.internal.CompactBundleCodec
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.lang.ref.WeakReference
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Persists a [Router]'s backstack to a file in the app's private storage so that it can be restored after a cold
+ * start, when there's no savedInstanceState to restore from. Pass a store to [Conductor.attachRouter] to have the
+ * Router restored from it when the Activity starts fresh and saved to it after every completed change.
+ *
+ * Saves are debounced by [writeDelayMs], and the Router's state is written out on [executor] so that navigation is
+ * never blocked on disk access. Each write replaces the file atomically. Snapshots written by a different build of
+ * the app or of the OS are ignored, as the classes they refer to may have changed.
+ *
+ * @param context Any Context from the app
+ * @param name The name of the snapshot, which must be unique for each Router being persisted
+ * @param writeDelayMs How long to wait after a change before saving, so that bursts of changes are only saved once
+ * @param executor The Executor that snapshots are written to disk on
+ */
+class RouterSnapshotStore @JvmOverloads constructor(
+  context: Context,
+  name: String,
+  private val writeDelayMs: Long = DEFAULT_WRITE_DELAY_MS,
+  private val executor: Executor = writeExecutor
+) {
+
+  private val file = File(File(context.filesDir, DIRECTORY_NAME), name)
+  private val buildId = "${Build.FINGERPRINT}/${appUpdateTime(context)}"
+  private val handler = Handler(Looper.getMainLooper())
+
+  // Held weakly, as this store usually outlives the Activity that hosts the Router.
+  private var routerReference: WeakReference<Router>? = null
+
+  private val router: Router?
+    get() = routerReference?.get()
+
+  private val saveRunnable = Runnable { save() }
+
+  private val changeListener = object : ControllerChangeListener {
+    override fun onChangeStarted(
+      to: Controller?,
+      from: Controller?,
+      isPush: Boolean,
+      container: ViewGroup,
+      handler: ControllerChangeHandler
+    ) {
+    }
+
+    override fun onChangeCompleted(
+      to: Controller?,
+      from: Controller?,
+      isPush: Boolean,
+      container: ViewGroup,
+      handler: ControllerChangeHandler
+    ) {
+      scheduleSave()
+    }
+  }
+
+  /**
+   * Starts saving the passed Router after every completed change. Only one Router can be attached at a time, so
+   * this replaces any Router that was attached before. The Router is only held weakly, so it doesn't need to be
+   * detached once its Activity is gone.
+   */
+  @UiThread
+  fun attach(router: Router) {
+    this.router?.removeChangeListener(changeListener)
+    routerReference = WeakReference(router)
+    router.addChangeListener(changeListener)
+  }
+
+  /**
+   * Stops saving the passed Router if it's the one currently attached.
+   */
+  @UiThread
+  fun detach(router: Router) {
+    if (this.router === router) {
+      router.removeChangeListener(changeListener)
+      handler.removeCallbacks(saveRunnable)
+      routerReference = null
+    }
+  }
+
+  /**
+   * Restores the passed Router from the last snapshot, if there is a usable one. Returns whether it was restored.
+   */
+  @UiThread
+  fun restore(router: Router): Boolean {
+    val savedState = read() ?: return false
+
+    return try {
+      router.restoreInstanceState(savedState)
+      true
+    } catch (e: Exception) {
+      // The snapshot refers to state that can no longer be restored, so start over from an empty backstack.
+      router.setBackstack(emptyList(), null)
+      clear()
+      false
+    }
+  }
+
+  /**
+   * Deletes the current snapshot, ex: once the user has finished the flow it was saving.
+   */
+  fun clear() {
+    handler.removeCallbacks(saveRunnable)
+    executor.execute { file.delete() }
+  }
+
+  private fun scheduleSave() {
+    handler.removeCallbacks(saveRunnable)
+    handler.postDelayed(saveRunnable, writeDelayMs)
+  }
+
+  private fun save() {
+    val router = router ?: return
+    if (router.activity == null) {
+      return
+    }
+
+    val savedState = Bundle()
+    router.saveTransientInstanceState(savedState)
+    val bytes = try {
+      CompactBundleCodec.encode(savedState)
+    } catch (e: RuntimeException) {
+      // Some state can't be written to disk (ex: Binders), so this snapshot is skipped.
+      return
+    }
+
+    executor.execute { writeSnapshot(bytes) }
+  }
+
+  private fun read(): Bundle? {
+    return try {
+      DataInputStream(file.inputStream().buffered()).use { input ->
+        if (input.readInt() != FORMAT_VERSION || input.readUTF() != buildId) {
+          return null
+        }
+        val bytes = ByteArray(input.readInt())
+        input.readFully(bytes)
+        CompactBundleCodec.decode(bytes, javaClass.classLoader)
+      }
+    } catch (e: Exception) {
+      null
+    }
+  }
+
+  private fun writeSnapshot(bytes: ByteArray) {
+    val tempFile = File(file.parentFile, "${file.name}.tmp")
+    try {
+      file.parentFile?.mkdirs()
+      FileOutputStream(tempFile).use { stream ->
+        val output = DataOutputStream(stream.buffered())
+        output.writeInt(FORMAT_VERSION)
+        output.writeUTF(buildId)
+        output.writeInt(bytes.size)
+        output.write(bytes)
+        output.flush()
+        stream.fd.sync()
+      }
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete()
+      }
+    } catch (e: Exception) {
+      tempFile.delete()
+    }
+  }
+
+  companion object {
+    private const val DIRECTORY_NAME = "conductor-snapshots"
+    private const val FORMAT_VERSION = 1
+    private const val DEFAULT_WRITE_DELAY_MS = 500L
+
+    private val writeExecutor: Executor by lazy {
+      Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Conductor-RouterSnapshotStore").apply { isDaemon = true }
+      }
+    }
+
+    private fun appUpdateTime(context: Context): Long {
+      return try {
+        context.packageManager.getPackageInfo(context.packageName, 0).lastUpdateTime
+      } catch (e: Exception) {
+        0
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ package com.bluelinelabs.conductor
 import android.os.Bundle
 import androidx.annotation.RestrictTo
 import androidx.annotation.RestrictTo.Scope.LIBRARY
+import com.bluelinelabs.conductor.internal.SavedStateSpiller
 import com.bluelinelabs.conductor.internal.TransactionIndexer
 
 private const val INVALID_INDEX = -1
@@ -13,13 +14,15 @@ private const val KEY_TAG = "RouterTransaction.tag"
 private const val KEY_INDEX = "RouterTransaction.transactionIndex"
 private const val KEY_ATTACHED_TO_ROUTER = "RouterTransaction.attachedToRouter"
 
+private val SPILLABLE_KEYS = arrayOf(Controller.KEY_VIEW_STATE, Controller.KEY_SAVED_STATE)
+
 /**
  * Metadata used for adding [Controller]s to a [Router].
  */
 class RouterTransaction
 private constructor(
-  @get:JvmName("controller")
-  val controller: Controller,
+  createdController: Controller?,
+  private var pendingControllerState: Bundle? = null,
   private var tag: String? = null,
   private var pushControllerChangeHandler: ControllerChangeHandler? = null,
   private var popControllerChangeHandler: ControllerChangeHandler? = null,
@@ -29,10 +32,44 @@ private constructor(
   var transactionIndex: Int = INVALID_INDEX
 ) {
 
+  private var savedState: Bundle? = null
+  private var savedControllerState: Bundle? = null
+  private var spilledStateLoaded = false
+
+  // Overridden change handlers of a Controller that hasn't been created yet, so that visibility can be worked out
+  // without having to create it.
+  private var pendingOverriddenPushHandler: ControllerChangeHandler? = null
+  private var pendingOverriddenPopHandler: ControllerChangeHandler? = null
+
+  /**
+   * The Router that a lazily restored Controller should be set up with once it has been created.
+   */
+  @get:RestrictTo(LIBRARY)
+  @set:RestrictTo(LIBRARY)
+  var lazyRouter: Router? = null
+
+  /**
+   * The Controller for this transaction, or null if it was restored lazily and hasn't been needed since.
+   */
+  @get:RestrictTo(LIBRARY)
+  var createdController: Controller? = createdController
+    private set
+
+  @get:JvmName("controller")
+  val controller: Controller
+    get() = createdController ?: createController()
+
+  /**
+   * The instance ID of this transaction's Controller, which is available without creating it.
+   */
+  @get:RestrictTo(LIBRARY)
+  val instanceId: String
+    get() = createdController?.instanceId ?: pendingControllerState!!.getString(Controller.KEY_INSTANCE_ID)!!
 
   @RestrictTo(LIBRARY)
-  internal constructor(bundle: Bundle) : this(
-    controller = Controller.newInstance(bundle.getBundle(KEY_VIEW_CONTROLLER_BUNDLE)!!),
+  internal constructor(bundle: Bundle, lazy: Boolean) : this(
+    createdController = if (lazy) null else Controller.newInstance(bundle.getBundle(KEY_VIEW_CONTROLLER_BUNDLE)!!),
+    pendingControllerState = if (lazy) bundle.getBundle(KEY_VIEW_CONTROLLER_BUNDLE)!! else null,
     pushControllerChangeHandler = ControllerChangeHandler.fromBundle(
       bundle.getBundle(
         KEY_PUSH_TRANSITION
@@ -46,7 +83,57 @@ private constructor(
     tag = bundle.getString(KEY_TAG),
     transactionIndex = bundle.getInt(KEY_INDEX),
     attachedToRouter = bundle.getBoolean(KEY_ATTACHED_TO_ROUTER)
-  )
+  ) {
+    pendingControllerState?.let { state ->
+      pendingOverriddenPushHandler = ControllerChangeHandler.fromBundle(
+        state.getBundle(Controller.KEY_OVERRIDDEN_PUSH_HANDLER)
+      )
+      pendingOverriddenPopHandler = ControllerChangeHandler.fromBundle(
+        state.getBundle(Controller.KEY_OVERRIDDEN_POP_HANDLER)
+      )
+    }
+  }
+
+  /**
+   * Whether the Controller for this transaction had child Routers when it was saved. Always true once it has
+   * been created, as it may have gained some since.
+   */
+  @RestrictTo(LIBRARY)
+  fun mayHostChildRouters(): Boolean {
+    if (createdController != null) {
+      return true
+    }
+    return pendingControllerState!!.getParcelableArrayList<Bundle>(Controller.KEY_CHILD_ROUTERS)?.isNotEmpty() == true
+  }
+
+  /**
+   * Whether this transaction's Controller needs to be attached when its Router is rebound.
+   */
+  @RestrictTo(LIBRARY)
+  fun needsAttach(): Boolean {
+    return createdController?.needsAttach ?: pendingControllerState!!.getBoolean(Controller.KEY_NEEDS_ATTACH)
+  }
+
+  /**
+   * The class name of this transaction's Controller, which is available without creating it.
+   */
+  @get:RestrictTo(LIBRARY)
+  val controllerClassName: String
+    get() = createdController?.javaClass?.name ?: pendingControllerState!!.getString(Controller.KEY_CLASS_NAME)!!
+
+  private fun createController(): Controller {
+    val controller = Controller.newInstance(pendingControllerState!!)
+    createdController = controller
+    pendingControllerState = null
+    pendingOverriddenPushHandler = null
+    pendingOverriddenPopHandler = null
+
+    lazyRouter?.let { router ->
+      lazyRouter = null
+      router.setRouterOnController(controller)
+    }
+    return controller
+  }
 
   fun onAttachedToRouter() {
     attachedToRouter = true
@@ -64,7 +151,8 @@ private constructor(
   }
 
   fun pushChangeHandler(): ControllerChangeHandler? {
-    return controller.overriddenPushHandler ?: pushControllerChangeHandler
+    val overriddenHandler = createdController?.overriddenPushHandler ?: pendingOverriddenPushHandler
+    return overriddenHandler ?: pushControllerChangeHandler
   }
 
   fun pushChangeHandler(handler: ControllerChangeHandler?): RouterTransaction {
@@ -77,7 +165,8 @@ private constructor(
   }
 
   fun popChangeHandler(): ControllerChangeHandler? {
-    return controller.overriddenPopHandler ?: popControllerChangeHandler
+    val overriddenHandler = createdController?.overriddenPopHandler ?: pendingOverriddenPopHandler
+    return overriddenHandler ?: popControllerChangeHandler
   }
 
   fun popChangeHandler(handler: ControllerChangeHandler?): RouterTransaction {
@@ -98,19 +187,81 @@ private constructor(
   /**
    * Used to serialize this transaction into a Bundle
    */
-  fun saveInstanceState(): Bundle = Bundle().apply {
-    putBundle(KEY_VIEW_CONTROLLER_BUNDLE, controller.saveInstanceState())
-    pushControllerChangeHandler?.let { putBundle(KEY_PUSH_TRANSITION, it.toBundle()) }
-    popControllerChangeHandler?.let { putBundle(KEY_POP_TRANSITION, it.toBundle()) }
-    putString(KEY_TAG, tag)
-    putInt(KEY_INDEX, transactionIndex)
-    putBoolean(KEY_ATTACHED_TO_ROUTER, attachedToRouter)
+  fun saveInstanceState(): Bundle {
+    // Controllers that were never created still have the state they were restored from. Any of it that was spilled
+    // has to be read back now, as those files are deleted once this save has been written.
+    val controllerState = createdController?.saveInstanceState() ?: pendingControllerState!!.also { state ->
+      if (!spilledStateLoaded) {
+        loadSpilledState(state)
+        spilledStateLoaded = true
+      }
+    }
+
+    // Everything other than the index is fixed once attached, so the last Bundle is still valid if the
+    // Controller handed back its cached state.
+    val lastSavedState = savedState
+    if (lastSavedState != null && attachedToRouter && controllerState === savedControllerState &&
+      lastSavedState.getInt(KEY_INDEX) == transactionIndex
+    ) {
+      return lastSavedState
+    }
+
+    return Bundle().apply {
+      putBundle(KEY_VIEW_CONTROLLER_BUNDLE, controllerState)
+      pushControllerChangeHandler?.let { putBundle(KEY_PUSH_TRANSITION, it.toBundle()) }
+      popControllerChangeHandler?.let { putBundle(KEY_POP_TRANSITION, it.toBundle()) }
+      putString(KEY_TAG, tag)
+      putInt(KEY_INDEX, transactionIndex)
+      putBoolean(KEY_ATTACHED_TO_ROUTER, attachedToRouter)
+
+      savedState = this
+      savedControllerState = controllerState
+    }
   }
 
   companion object {
 
     @JvmStatic
-    fun with(controller: Controller): RouterTransaction = RouterTransaction(controller)
+    fun with(controller: Controller): RouterTransaction = RouterTransaction(createdController = controller)
+
+    /**
+     * Returns the Controller's state from a Bundle written by [saveInstanceState].
+     */
+    internal fun controllerState(savedInstanceState: Bundle): Bundle? {
+      return savedInstanceState.getBundle(KEY_VIEW_CONTROLLER_BUNDLE)
+    }
+
+    /**
+     * Reads every Bundle that was spilled from a Controller's saved state back into it, including those of the
+     * Controllers in its child Routers. Controllers that haven't been created since they were restored still refer
+     * to the files of an older save, which are deleted once the next save has been written. Returns true if
+     * anything was read back.
+     */
+    private fun loadSpilledState(controllerState: Bundle): Boolean {
+      var loaded = false
+      for (key in SPILLABLE_KEYS) {
+        val path = controllerState.getString(SavedStateSpiller.spilledKey(key)) ?: continue
+        controllerState.remove(SavedStateSpiller.spilledKey(key))
+        SavedStateSpiller.load(path, RouterTransaction::class.java.classLoader)?.let { controllerState.putBundle(key, it) }
+        loaded = true
+      }
+
+      controllerState.getParcelableArrayList<Bundle>(Controller.KEY_CHILD_ROUTERS)?.forEach { routerState ->
+        val backstackState = Router.getBackstackState(routerState) ?: return@forEach
+
+        var loadedIntoBackstack = false
+        for (transactionState in Backstack.transactionStates(backstackState)) {
+          val childControllerState = controllerState(transactionState) ?: continue
+          loadedIntoBackstack = loadSpilledState(childControllerState) || loadedIntoBackstack
+        }
+
+        if (loadedIntoBackstack) {
+          Router.putBackstackState(routerState, backstackState)
+          loaded = true
+        }
+      }
+      return loaded
+    }
   }
 }
 
@@ -0,0 +1,154 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.os.Parcel
+
+/**
+ * A breakdown of how many bytes each [Controller] in a [Router] takes up in its saved state, as returned by
+ * [Router.getSavedStateReport]. Sizes are measured by writing each part of the state to a Parcel, so they match what
+ * counts towards the limit on an Activity's saved state.
+ */
+class SavedStateReport internal constructor(
+  /**
+   * One entry for each Controller, in the order they're saved: each backstack from root to top, with every
+   * Controller's child Routers following it.
+   */
+  val entries: List<Entry>
+) {
+
+  /**
+   * The combined size of every Controller in the reported Router.
+   */
+  val totalSize: Int
+    get() = entries.filter { it.depth == 0 }.sumOf { it.totalSize }
+
+  /**
+   * The size taken up by all Controllers of each class, keyed by class name, from largest to smallest. Child
+   * Routers are counted towards the classes of the Controllers in them rather than towards their parent's.
+   */
+  val sizesByClass: Map<String, Int>
+    get() = entries
+      .groupBy { it.className }
+      .mapValues { (_, classEntries) -> classEntries.sumOf { it.ownSize } }
+      .entries
+      .sortedByDescending { it.value }
+      .associate { it.key to it.value }
+
+  /**
+   * Returns the entries whose own state, not counting their child Routers, is over [thresholdBytes], from largest to
+   * smallest.
+   */
+  fun entriesOver(thresholdBytes: Int): List<Entry> {
+    return entries.filter { it.ownSize > thresholdBytes }.sortedByDescending { it.ownSize }
+  }
+
+  override fun toString(): String {
+    return buildString {
+      append("SavedStateReport(totalSize=").append(totalSize).append(')')
+      entries.forEach { append("\n").append("  ".repeat(it.depth + 1)).append(it) }
+    }
+  }
+
+  /**
+   * The saved state sizes of a single Controller.
+   */
+  class Entry internal constructor(
+    val instanceId: String,
+    val className: String,
+    /**
+     * How many child Routers deep this Controller is, where Controllers in the reported Router are at 0.
+     */
+    val depth: Int,
+    val argsSize: Int,
+    /**
+     * The size of the Controller's saved view hierarchy and [Controller.onSaveViewState] Bundle.
+     */
+    val viewStateSize: Int,
+    /**
+     * The size of the Bundle filled in by [Controller.onSaveInstanceState].
+     */
+    val savedStateSize: Int,
+    /**
+     * The combined size of the Controller's child Routers, including every Controller in them.
+     */
+    val childRoutersSize: Int
+  ) {
+
+    /**
+     * The size of the Controller's own state, not counting its child Routers.
+     */
+    val ownSize: Int
+      get() = argsSize + viewStateSize + savedStateSize
+
+    val totalSize: Int
+      get() = ownSize + childRoutersSize
+
+    override fun toString(): String {
+      return "$className($instanceId): total=$totalSize, args=$argsSize, viewState=$viewStateSize, " +
+        "savedState=$savedStateSize, childRouters=$childRoutersSize"
+    }
+  }
+
+  internal companion object {
+
+    /**
+     * Builds a report from a Bundle written by [Router.saveInstanceState].
+     */
+    @JvmStatic
+    fun fromRouterState(routerState: Bundle): SavedStateReport {
+      val entries = mutableListOf<Entry>()
+      addEntries(routerState, 0, entries)
+      return SavedStateReport(entries)
+    }
+
+    /**
+     * Measures the state that a Controller is saving, for use while it's being saved. Everything is measured from
+     * the Bundles being written, so nothing is saved a second time.
+     */
+    fun entryFor(controller: Controller, savedState: Bundle): Entry {
+      val controllerState = controller.instanceStateBeingSaved
+      val childRouterStates = controllerState?.getParcelableArrayList<Bundle>(Controller.KEY_CHILD_ROUTERS).orEmpty()
+
+      return Entry(
+        instanceId = controller.instanceId,
+        className = controller.javaClass.name,
+        depth = 0,
+        argsSize = controllerState?.getBundle(Controller.KEY_ARGS)?.parceledSize() ?: 0,
+        viewStateSize = controllerState?.getBundle(Controller.KEY_VIEW_STATE)?.parceledSize() ?: 0,
+        savedStateSize = savedState.parceledSize(),
+        childRoutersSize = childRouterStates.sumOf { it.parceledSize() }
+      )
+    }
+
+    private fun addEntries(routerState: Bundle, depth: Int, entries: MutableList<Entry>) {
+      val backstackState = Router.getBackstackState(routerState) ?: return
+
+      for (transactionState in Backstack.transactionStates(backstackState)) {
+        val controllerState = RouterTransaction.controllerState(transactionState) ?: continue
+        val childRouterStates = controllerState.getParcelableArrayList<Bundle>(Controller.KEY_CHILD_ROUTERS).orEmpty()
+
+        entries += Entry(
+          instanceId = controllerState.getString(Controller.KEY_INSTANCE_ID).orEmpty(),
+          className = controllerState.getString(Controller.KEY_CLASS_NAME).orEmpty(),
+          depth = depth,
+          argsSize = controllerState.getBundle(Controller.KEY_ARGS)?.parceledSize() ?: 0,
+          viewStateSize = controllerState.getBundle(Controller.KEY_VIEW_STATE)?.parceledSize() ?: 0,
+          savedStateSize = controllerState.getBundle(Controller.KEY_SAVED_STATE)?.parceledSize() ?: 0,
+          childRoutersSize = childRouterStates.sumOf { it.parceledSize() }
+        )
+
+        childRouterStates.forEach { addEntries(it, depth + 1, entries) }
+      }
+    }
+
+    private fun Bundle.parceledSize(): Int {
+      val parcel = Parcel.obtain()
+      return try {
+        parcel.writeBundle(this)
+        parcel.dataSize()
+      } finally {
+        parcel.recycle()
+      }
+    }
+  }
+}
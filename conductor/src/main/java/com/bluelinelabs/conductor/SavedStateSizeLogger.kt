@@ -0,0 +1,39 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.util.Log
+
+/**
+ * A [Controller.LifecycleListener] that logs a warning whenever a Controller it's added to saves more than
+ * [thresholdBytes] of state, to help track down the screens that bloat an Activity's saved state. Measuring a save
+ * has a cost of its own, so this is meant for debug builds. Controllers in child Routers are only checked if the
+ * listener is also added to them.
+ *
+ * Override [onOversizedState] to report offenders somewhere other than Logcat.
+ *
+ * @param thresholdBytes The size that a Controller's own state, not counting its child Routers, can take up before
+ * it's reported
+ */
+open class SavedStateSizeLogger @JvmOverloads constructor(
+  private val thresholdBytes: Int,
+  private val logTag: String = DEFAULT_LOG_TAG
+) : Controller.LifecycleListener() {
+
+  override fun onSaveInstanceState(controller: Controller, outState: Bundle) {
+    val entry = SavedStateReport.entryFor(controller, outState)
+    if (entry.ownSize > thresholdBytes) {
+      onOversizedState(controller, entry)
+    }
+  }
+
+  /**
+   * Called when a Controller's saved state is over the threshold.
+   */
+  protected open fun onOversizedState(controller: Controller, entry: SavedStateReport.Entry) {
+    Log.w(logTag, "Saved state is over $thresholdBytes bytes: $entry")
+  }
+
+  private companion object {
+    const val DEFAULT_LOG_TAG = "Conductor"
+  }
+}
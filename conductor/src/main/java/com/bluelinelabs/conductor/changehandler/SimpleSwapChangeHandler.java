@@ -3,6 +3,7 @@ package com.bluelinelabs.conductor.changehandler;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
 import android.view.View;
 import android.view.View.OnAttachStateChangeListener;
 import android.view.ViewGroup;
@@ -112,4 +113,13 @@ public class SimpleSwapChangeHandler extends ControllerChangeHandler implements
     public boolean isReusable() {
         return true;
     }
+
+    /**
+     * Returns whether or not this handler is neither in the middle of a change nor has been aborted, meaning it
+     * can safely be used for another change.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public boolean isIdle() {
+        return changeListener == null && !canceled;
+    }
 }
@@ -0,0 +1,33 @@
+@file:JvmName("AsyncInflation")
+
+package com.bluelinelabs.conductor.internal
+
+import android.os.Process
+import androidx.annotation.RestrictTo
+import androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+private val inflaterExecutor: ExecutorService by lazy {
+  Executors.newSingleThreadExecutor { runnable ->
+    Thread({
+      Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND)
+      runnable.run()
+    }, "Conductor-Inflater").apply { isDaemon = true }
+  }
+}
+
+/**
+ * Runs [task] on Conductor's inflater thread, then posts [onComplete] back to the main thread once it
+ * has finished, regardless of whether or not it threw.
+ */
+@RestrictTo(LIBRARY_GROUP)
+internal fun inflateInBackground(task: Runnable, onComplete: Runnable) {
+  inflaterExecutor.execute {
+    try {
+      task.run()
+    } finally {
+      postOnMainThread(onComplete)
+    }
+  }
+}
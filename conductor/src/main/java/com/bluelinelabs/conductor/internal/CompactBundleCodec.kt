@@ -0,0 +1,255 @@
+package com.bluelinelabs.conductor.internal
+
+import android.os.Bundle
+import android.os.Parcel
+import android.os.Parcelable
+import android.util.SparseArray
+import androidx.annotation.RestrictTo
+import androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP
+import java.io.ByteArrayOutputStream
+import java.io.Serializable
+
+/**
+ * Encodes a tree of Bundles into a single byte array that is much smaller than the Bundles themselves. Every
+ * string (keys as well as values, which covers the class names repeated for each Controller and change handler)
+ * is written once to a table and referenced by a varint index from then on. Values other than primitives,
+ * strings, Bundles and lists of those are stored as individually parceled blobs.
+ *
+ * Decoding gives back Bundles with the same keys, values and value types as the ones that were encoded. Encoding
+ * throws for Bundles that can't be written to a Parcel, such as ones holding Binders.
+ */
+@RestrictTo(LIBRARY_GROUP)
+object CompactBundleCodec {
+
+  private const val VERSION = 1
+
+  private const val TYPE_NULL = 0
+  private const val TYPE_STRING = 1
+  private const val TYPE_INT = 2
+  private const val TYPE_LONG = 3
+  private const val TYPE_FALSE = 4
+  private const val TYPE_TRUE = 5
+  private const val TYPE_FLOAT = 6
+  private const val TYPE_DOUBLE = 7
+  private const val TYPE_BUNDLE = 8
+  private const val TYPE_BUNDLE_LIST = 9
+  private const val TYPE_STRING_LIST = 10
+  private const val TYPE_PARCELED = 11
+
+  @JvmStatic
+  fun encode(bundle: Bundle): ByteArray {
+    val strings = LinkedHashMap<String, Int>()
+    val body = Output()
+    body.writeBundle(bundle, strings)
+
+    val out = Output()
+    out.writeVarint(VERSION)
+    out.writeVarint(strings.size)
+    strings.keys.forEach { string ->
+      val bytes = string.toByteArray(Charsets.UTF_8)
+      out.writeVarint(bytes.size)
+      out.write(bytes, 0, bytes.size)
+    }
+    body.writeTo(out)
+    return out.toByteArray()
+  }
+
+  @JvmStatic
+  fun decode(bytes: ByteArray, classLoader: ClassLoader?): Bundle {
+    val input = Input(bytes)
+    val version = input.readVarint()
+    if (version != VERSION) {
+      throw IllegalArgumentException("Unsupported saved state version $version")
+    }
+
+    val strings = Array(input.readVarint()) {
+      val length = input.readVarint()
+      String(input.readBytes(length), Charsets.UTF_8)
+    }
+    return input.readBundle(strings, classLoader)
+  }
+
+  private fun Output.writeString(string: String, strings: MutableMap<String, Int>) {
+    writeVarint(strings.getOrPut(string) { strings.size })
+  }
+
+  private fun Output.writeBundle(bundle: Bundle, strings: MutableMap<String, Int>) {
+    val keys = bundle.keySet()
+    writeVarint(keys.size)
+    for (key in keys) {
+      writeString(key, strings)
+      @Suppress("DEPRECATION")
+      writeValue(bundle.get(key), strings)
+    }
+  }
+
+  private fun Output.writeValue(value: Any?, strings: MutableMap<String, Int>) {
+    when {
+      value == null -> write(TYPE_NULL)
+      value is String -> {
+        write(TYPE_STRING)
+        writeString(value, strings)
+      }
+      value is Int -> {
+        write(TYPE_INT)
+        writeVarint((value shl 1) xor (value shr 31))
+      }
+      value is Long -> {
+        write(TYPE_LONG)
+        writeVarlong((value shl 1) xor (value shr 63))
+      }
+      value is Boolean -> write(if (value) TYPE_TRUE else TYPE_FALSE)
+      value is Float -> {
+        write(TYPE_FLOAT)
+        writeFixed(java.lang.Float.floatToIntBits(value).toLong(), 4)
+      }
+      value is Double -> {
+        write(TYPE_DOUBLE)
+        writeFixed(java.lang.Double.doubleToLongBits(value), 8)
+      }
+      value is Bundle -> {
+        write(TYPE_BUNDLE)
+        writeBundle(value, strings)
+      }
+      value is ArrayList<*> && value.all { it is Bundle } -> {
+        write(TYPE_BUNDLE_LIST)
+        writeVarint(value.size)
+        value.forEach { writeBundle(it as Bundle, strings) }
+      }
+      value is ArrayList<*> && value.all { it == null || it is String } -> {
+        write(TYPE_STRING_LIST)
+        writeVarint(value.size)
+        value.forEach { string ->
+          // Zero is reserved for null entries.
+          writeVarint(if (string == null) 0 else strings.getOrPut(string as String) { strings.size } + 1)
+        }
+      }
+      else -> {
+        write(TYPE_PARCELED)
+        val parcel = Parcel.obtain()
+        try {
+          parcel.writeValue(value)
+          val bytes = parcel.marshall()
+          writeVarint(bytes.size)
+          write(bytes, 0, bytes.size)
+        } finally {
+          parcel.recycle()
+        }
+      }
+    }
+  }
+
+  private fun Input.readBundle(strings: Array<String>, classLoader: ClassLoader?): Bundle {
+    val size = readVarint()
+    val bundle = Bundle(classLoader)
+    repeat(size) {
+      val key = strings[readVarint()]
+      when (val type = readByte()) {
+        TYPE_NULL -> bundle.putString(key, null)
+        TYPE_STRING -> bundle.putString(key, strings[readVarint()])
+        TYPE_INT -> bundle.putInt(key, readVarint().let { (it ushr 1) xor -(it and 1) })
+        TYPE_LONG -> bundle.putLong(key, readVarlong().let { (it ushr 1) xor -(it and 1) })
+        TYPE_FALSE -> bundle.putBoolean(key, false)
+        TYPE_TRUE -> bundle.putBoolean(key, true)
+        TYPE_FLOAT -> bundle.putFloat(key, java.lang.Float.intBitsToFloat(readFixed(4).toInt()))
+        TYPE_DOUBLE -> bundle.putDouble(key, java.lang.Double.longBitsToDouble(readFixed(8)))
+        TYPE_BUNDLE -> bundle.putBundle(key, readBundle(strings, classLoader))
+        TYPE_BUNDLE_LIST -> {
+          val count = readVarint()
+          val list = ArrayList<Bundle>(count)
+          repeat(count) {
+            list.add(readBundle(strings, classLoader))
+          }
+          bundle.putParcelableArrayList(key, list)
+        }
+        TYPE_STRING_LIST -> {
+          val count = readVarint()
+          val list = ArrayList<String?>(count)
+          repeat(count) {
+            val index = readVarint()
+            list.add(if (index == 0) null else strings[index - 1])
+          }
+          bundle.putStringArrayList(key, list)
+        }
+        TYPE_PARCELED -> {
+          val bytes = readBytes(readVarint())
+          val parcel = Parcel.obtain()
+          try {
+            parcel.unmarshall(bytes, 0, bytes.size)
+            parcel.setDataPosition(0)
+            bundle.putValue(key, parcel.readValue(classLoader))
+          } finally {
+            parcel.recycle()
+          }
+        }
+        else -> throw IllegalArgumentException("Unknown saved state value type $type")
+      }
+    }
+    return bundle
+  }
+
+  // Bundles keep all of their values in a single map, so any setter that accepts the value's type stores it as is.
+  @Suppress("UNCHECKED_CAST")
+  private fun Bundle.putValue(key: String, value: Any?) {
+    when (value) {
+      null -> putString(key, null)
+      is Parcelable -> putParcelable(key, value)
+      is CharSequence -> putCharSequence(key, value)
+      is SparseArray<*> -> putSparseParcelableArray(key, value as SparseArray<out Parcelable>)
+      is Serializable -> putSerializable(key, value)
+      else -> throw IllegalArgumentException("Unable to restore saved state value of type ${value.javaClass.name}")
+    }
+  }
+
+  private class Output : ByteArrayOutputStream() {
+    fun writeVarint(value: Int) {
+      writeVarlong(value.toLong() and 0xFFFFFFFFL)
+    }
+
+    fun writeVarlong(value: Long) {
+      var remaining = value
+      while (remaining and 0x7FL.inv() != 0L) {
+        write(((remaining and 0x7F) or 0x80).toInt())
+        remaining = remaining ushr 7
+      }
+      write(remaining.toInt())
+    }
+
+    fun writeFixed(value: Long, byteCount: Int) {
+      for (i in 0 until byteCount) {
+        write((value ushr (i * 8)).toInt() and 0xFF)
+      }
+    }
+  }
+
+  private class Input(private val bytes: ByteArray) {
+    private var position = 0
+
+    fun readByte(): Int = bytes[position++].toInt() and 0xFF
+
+    fun readBytes(count: Int): ByteArray = bytes.copyOfRange(position, position + count).also { position += count }
+
+    fun readVarint(): Int = readVarlong().toInt()
+
+    fun readVarlong(): Long {
+      var result = 0L
+      var shift = 0
+      while (true) {
+        val byte = readByte()
+        result = result or ((byte and 0x7F).toLong() shl shift)
+        if (byte and 0x80 == 0) {
+          return result
+        }
+        shift += 7
+      }
+    }
+
+    fun readFixed(byteCount: Int): Long {
+      var result = 0L
+      for (i in 0 until byteCount) {
+        result = result or (readByte().toLong() shl (i * 8))
+      }
+      return result
+    }
+  }
+}
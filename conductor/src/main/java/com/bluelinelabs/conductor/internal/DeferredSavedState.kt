@@ -0,0 +1,139 @@
+package com.bluelinelabs.conductor.internal
+
+import android.os.Bundle
+import android.os.Parcel
+import android.os.Parcelable
+import java.util.concurrent.Callable
+import java.util.concurrent.Executor
+import java.util.concurrent.FutureTask
+
+/**
+ * Saved state whose costly part, spilling to disk and flattening into bytes, runs on a background [Executor]. The
+ * Bundles passed in are copied on the main thread, as Controllers keep modifying their own Bundles after a save (ex:
+ * args, or Bundles refilled by their next save). Writing this to a Parcel only has to wait if the background work
+ * hasn't finished by the time the framework needs the bytes.
+ */
+internal class DeferredSavedState private constructor(
+  private val task: FutureTask<Result>?,
+  private val restoredState: Bundle?
+) : Parcelable {
+
+  /**
+   * The combined saved state, which waits for the background work to finish if it hasn't yet.
+   */
+  val state: Bundle
+    get() = restoredState ?: awaitResult().state
+
+  fun await() {
+    task?.let { awaitResult() }
+  }
+
+  private fun awaitResult(): Result = task!!.let { task ->
+    // Make sure the work gets done even if the executor hasn't gotten to it yet.
+    task.run()
+    task.get()
+  }
+
+  override fun describeContents(): Int = 0
+
+  override fun writeToParcel(out: Parcel, flags: Int) {
+    val result = awaitResult()
+    val bytes = result.bytes
+    if (bytes != null) {
+      out.writeInt(FORMAT_BYTES)
+      out.writeByteArray(bytes)
+    } else {
+      out.writeInt(FORMAT_BUNDLE)
+      out.writeBundle(result.state)
+    }
+  }
+
+  private class Result(val state: Bundle, val bytes: ByteArray?)
+
+  companion object {
+    private const val FORMAT_BUNDLE = 0
+    private const val FORMAT_BYTES = 1
+
+    /**
+     * Starts combining the passed states under their keys on [executor], spilling them first if a [spiller] is
+     * passed. The states are copied before this returns, so they can be modified again right away.
+     */
+    @JvmStatic
+    fun serialize(
+      keys: List<String>,
+      states: List<Bundle>,
+      spiller: SavedStateSpiller?,
+      sizeBudget: Int,
+      executor: Executor
+    ): DeferredSavedState {
+      val capturedStates = states.map { it.copyTree() }
+      val task = FutureTask(Callable {
+        val spilledStates = try {
+          spiller?.spillIfNeeded(capturedStates, sizeBudget) ?: capturedStates
+        } catch (e: Exception) {
+          capturedStates
+        }
+
+        val state = Bundle()
+        keys.forEachIndexed { index, key -> state.putBundle(key, spilledStates[index]) }
+        Result(state, state.marshall())
+      })
+      executor.execute(task)
+      return DeferredSavedState(task, null)
+    }
+
+    // Copies every Bundle in the tree, including those in lists such as child Router states. Other values are
+    // shared with the original, which is why apps must not modify Parcelables after they've been saved.
+    private fun Bundle.copyTree(): Bundle {
+      val copy = Bundle(this)
+      for (key in keySet()) {
+        @Suppress("DEPRECATION")
+        val value = get(key)
+        when {
+          value is Bundle -> copy.putBundle(key, value.copyTree())
+          value is ArrayList<*> && value.isNotEmpty() && value.all { it is Bundle } -> {
+            copy.putParcelableArrayList(key, value.mapTo(ArrayList()) { (it as Bundle).copyTree() })
+          }
+        }
+      }
+      return copy
+    }
+
+    private fun Bundle.marshall(): ByteArray? {
+      val parcel = Parcel.obtain()
+      return try {
+        parcel.writeBundle(this)
+        parcel.marshall()
+      } catch (e: RuntimeException) {
+        // Bundles holding Binders or file descriptors can't be flattened, so they're written out as they are.
+        null
+      } finally {
+        parcel.recycle()
+      }
+    }
+
+    @Suppress("unused")
+    @JvmField
+    val CREATOR: Parcelable.Creator<DeferredSavedState> = object : Parcelable.Creator<DeferredSavedState> {
+      override fun createFromParcel(parcel: Parcel): DeferredSavedState {
+        val classLoader = DeferredSavedState::class.java.classLoader
+        val state = if (parcel.readInt() == FORMAT_BYTES) {
+          val bytes = parcel.createByteArray()!!
+          val bytesParcel = Parcel.obtain()
+          try {
+            bytesParcel.unmarshall(bytes, 0, bytes.size)
+            bytesParcel.setDataPosition(0)
+            bytesParcel.readBundle(classLoader)!!
+          } finally {
+            bytesParcel.recycle()
+          }
+        } else {
+          parcel.readBundle(classLoader)!!
+        }
+        return DeferredSavedState(null, state)
+      }
+
+      override fun newArray(size: Int): Array<DeferredSavedState?> = arrayOfNulls(size)
+    }
+  }
+}
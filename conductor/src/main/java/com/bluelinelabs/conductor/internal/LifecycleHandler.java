@@ -21,12 +21,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.bluelinelabs.conductor.ActivityHostedRouter;
+import com.bluelinelabs.conductor.Conductor;
 import com.bluelinelabs.conductor.Router;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
 
 public class LifecycleHandler extends Fragment implements ActivityLifecycleCallbacks {
 
@@ -36,6 +42,10 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
     private static final String KEY_PERMISSION_REQUEST_CODES = "LifecycleHandler.permissionRequests";
     private static final String KEY_ACTIVITY_REQUEST_CODES = "LifecycleHandler.activityRequests";
     private static final String KEY_ROUTER_STATE_PREFIX = "LifecycleHandler.routerState";
+    private static final String KEY_SAVED_STATE_SPILL_ID = "LifecycleHandler.savedStateSpillId";
+    private static final String KEY_DEFERRED_ROUTER_STATES = "LifecycleHandler.deferredRouterStates";
+
+    private static final String SAVED_STATE_SPILL_DIRECTORY = "conductor-saved-state";
 
     private Activity activity;
     private boolean hasRegisteredCallbacks;
@@ -50,6 +60,12 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
 
     private final Map<Integer, ActivityHostedRouter> routerMap = new HashMap<>();
 
+    private String savedStateSpillId;
+    private SavedStateSpiller savedStateSpiller;
+    // The last save's state while it may still be serializing in the background. The Controllers and spiller it
+    // uses must not be touched again until it has finished.
+    private DeferredSavedState pendingSavedState;
+
     public LifecycleHandler() {
         setRetainInstance(true);
         setHasOptionsMenu(true);
@@ -80,13 +96,24 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
 
     @NonNull
     public Router getRouter(@NonNull ViewGroup container, @Nullable Bundle savedInstanceState) {
+        if (savedInstanceState != null && savedStateSpillId == null) {
+            savedStateSpillId = savedInstanceState.getString(KEY_SAVED_STATE_SPILL_ID);
+        }
+
         ActivityHostedRouter router = routerMap.get(getRouterHashKey(container));
         if (router == null) {
             router = new ActivityHostedRouter();
             router.setHost(this, container);
 
             if (savedInstanceState != null) {
-                Bundle routerSavedState = savedInstanceState.getBundle(KEY_ROUTER_STATE_PREFIX + router.getContainerId());
+                String key = KEY_ROUTER_STATE_PREFIX + router.getContainerId();
+                Bundle routerSavedState = savedInstanceState.getBundle(key);
+                if (routerSavedState == null) {
+                    DeferredSavedState deferredState = savedInstanceState.getParcelable(KEY_DEFERRED_ROUTER_STATES);
+                    if (deferredState != null) {
+                        routerSavedState = deferredState.getState().getBundle(key);
+                    }
+                }
                 if (routerSavedState != null) {
                     router.restoreInstanceState(routerSavedState);
                 }
@@ -157,9 +184,16 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
         super.onDestroy();
 
         if (activity != null) {
+            awaitPendingSavedState();
             activity.getApplication().unregisterActivityLifecycleCallbacks(this);
             activeLifecycleHandlers.remove(activity);
             destroyRouters(false);
+
+            // Spilled state is only needed as long as the Activity can still be restored.
+            if (savedStateSpiller != null && activity.isFinishing()) {
+                savedStateSpiller.clear();
+            }
+
             activity = null;
         }
 
@@ -223,9 +257,21 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
         }
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        writer.print(prefix);
+        writer.println("Conductor Routers:");
+        for (Router router : getRouters()) {
+            router.dumpTree(prefix + "  ", writer);
+        }
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        awaitPendingSavedState();
 
         String instanceId = activityRequestMap.get(requestCode);
         if (instanceId != null) {
@@ -238,6 +284,7 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        awaitPendingSavedState();
 
         String instanceId = permissionRequestMap.get(requestCode);
         if (instanceId != null) {
@@ -276,6 +323,24 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        for (Router router : getRouters()) {
+            router.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        for (Router router : getRouters()) {
+            router.onLowMemory();
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         for (Router router : getRouters()) {
@@ -342,6 +407,7 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
     public void onActivityStarted(Activity activity) {
         if (this.activity == activity) {
             hasPreparedForHostDetach = false;
+            awaitPendingSavedState();
 
             for (Router router : getRouters()) {
                 router.onActivityStarted(activity);
@@ -382,11 +448,39 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
     public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
         if (this.activity == activity) {
             prepareForHostDetachIfNeeded();
+            awaitPendingSavedState();
 
-            for (Router router : getRouters()) {
+            List<Router> routers = getRouters();
+            List<String> keys = new ArrayList<>(routers.size());
+            List<Bundle> routerStates = new ArrayList<>(routers.size());
+            for (Router router : routers) {
                 Bundle bundle = new Bundle();
                 router.saveInstanceState(bundle);
-                outState.putBundle(KEY_ROUTER_STATE_PREFIX + router.getContainerId(), bundle);
+                keys.add(KEY_ROUTER_STATE_PREFIX + router.getContainerId());
+                routerStates.add(bundle);
+            }
+
+            int sizeBudget = Conductor.getSavedStateSizeBudget();
+            SavedStateSpiller spiller = null;
+            if (sizeBudget > 0) {
+                spiller = getSavedStateSpiller(activity);
+                outState.putString(KEY_SAVED_STATE_SPILL_ID, savedStateSpillId);
+            }
+
+            Executor executor = Conductor.getStateSerializationExecutor();
+            if (executor != null) {
+                pendingSavedState = DeferredSavedState.serialize(keys, routerStates, spiller, sizeBudget, executor);
+                outState.putParcelable(KEY_DEFERRED_ROUTER_STATES, pendingSavedState);
+            } else {
+                // Spilled files are written on the main thread here. The saved state only refers to them by path, so
+                // they have to exist before the framework can persist it.
+                if (spiller != null) {
+                    routerStates = spiller.spillIfNeeded(routerStates, sizeBudget);
+                }
+
+                for (int i = 0; i < keys.size(); i++) {
+                    outState.putBundle(keys.get(i), routerStates.get(i));
+                }
             }
         }
     }
@@ -396,6 +490,28 @@ public class LifecycleHandler extends Fragment implements ActivityLifecycleCallb
         activeLifecycleHandlers.remove(activity);
     }
 
+    @NonNull
+    private SavedStateSpiller getSavedStateSpiller(@NonNull Activity activity) {
+        if (savedStateSpiller == null) {
+            if (savedStateSpillId == null) {
+                savedStateSpillId = UUID.randomUUID().toString();
+            }
+
+            File root = new File(activity.getFilesDir(), SAVED_STATE_SPILL_DIRECTORY);
+            File directory = new File(root, savedStateSpillId);
+            SavedStateSpiller.deleteStaleDirectories(root, directory);
+            savedStateSpiller = new SavedStateSpiller(directory);
+        }
+        return savedStateSpiller;
+    }
+
+    private void awaitPendingSavedState() {
+        if (pendingSavedState != null) {
+            pendingSavedState.await();
+            pendingSavedState = null;
+        }
+    }
+
     private void prepareForHostDetachIfNeeded() {
         if (!hasPreparedForHostDetach) {
             hasPreparedForHostDetach = true;
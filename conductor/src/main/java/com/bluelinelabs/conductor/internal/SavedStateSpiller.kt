@@ -0,0 +1,167 @@
+package com.bluelinelabs.conductor.internal
+
+import android.os.Bundle
+import android.os.Parcel
+import com.bluelinelabs.conductor.Conductor
+import com.bluelinelabs.conductor.Controller
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps saved state under [Conductor.savedStateSizeBudget] by moving the largest Controller view states and saved
+ * states into files. Spilled Bundles are replaced by the path of their file, which Controllers read back on
+ * restoration.
+ *
+ * Every save that spills uses a new generation number in its file names. Files from older generations are
+ * deleted once a newer save has been written, as the system only ever restores from the latest one.
+ */
+internal class SavedStateSpiller(private val directory: File) {
+
+  private var generation = (directory.listFiles()?.mapNotNull { it.generation }?.maxOrNull() ?: 0) + 1
+
+  /**
+   * Returns the Bundles that should be saved in place of [states]. If their combined size is over [budgetBytes],
+   * these are copies in which the largest spillable Bundles have been written to disk. The passed Bundles are
+   * never modified, as Controllers may hand them out again on their next save.
+   */
+  fun spillIfNeeded(states: List<Bundle>, budgetBytes: Int): List<Bundle> {
+    deleteOldGenerations()
+
+    var totalSize = states.sumOf { it.parceledSize() }
+    if (totalSize <= budgetBytes) {
+      return states
+    }
+
+    val candidates = mutableListOf<Candidate>()
+    val copies = states.map { copyTree(it, candidates) }
+
+    directory.mkdirs()
+    candidates.sortByDescending { it.size }
+    for ((index, candidate) in candidates.withIndex()) {
+      if (totalSize <= budgetBytes) {
+        break
+      }
+
+      val file = File(directory, "$generation-$index")
+      try {
+        file.writeBytes(candidate.bytes)
+      } catch (e: Exception) {
+        continue
+      }
+
+      candidate.parent.remove(candidate.key)
+      candidate.parent.putString(spilledKey(candidate.key), file.absolutePath)
+      totalSize -= candidate.size
+    }
+
+    generation++
+    return copies
+  }
+
+  /**
+   * Deletes all files written by this spiller.
+   */
+  fun clear() {
+    directory.deleteRecursively()
+  }
+
+  private fun deleteOldGenerations() {
+    directory.listFiles()?.forEach { file ->
+      if ((file.generation ?: 0) < generation) {
+        file.delete()
+      }
+    }
+  }
+
+  // Shallow copies every Bundle between the passed one and its spillable descendants, so that the copies can be
+  // modified without touching the original tree.
+  private fun copyTree(bundle: Bundle, candidates: MutableList<Candidate>): Bundle {
+    val copy = Bundle(bundle)
+    for (key in bundle.keySet()) {
+      @Suppress("DEPRECATION")
+      val value = bundle.get(key)
+      when {
+        value is Bundle && key in SPILLABLE_KEYS -> value.marshall()?.let { candidates.add(Candidate(copy, key, it)) }
+        value is Bundle -> copy.putBundle(key, copyTree(value, candidates))
+        value is ArrayList<*> && value.isNotEmpty() && value.all { it is Bundle } -> {
+          copy.putParcelableArrayList(key, value.mapTo(ArrayList()) { copyTree(it as Bundle, candidates) })
+        }
+      }
+    }
+    return copy
+  }
+
+  private class Candidate(val parent: Bundle, val key: String, val bytes: ByteArray) {
+    val size: Int get() = bytes.size
+  }
+
+  companion object {
+    private val SPILLABLE_KEYS = setOf(Controller.KEY_VIEW_STATE, Controller.KEY_SAVED_STATE)
+
+    // Directories that haven't been written to in this long belong to tasks that are no longer around.
+    private val STALE_DIRECTORY_AGE_MS = TimeUnit.DAYS.toMillis(7)
+
+    @JvmStatic
+    fun spilledKey(key: String) = "$key.spilled"
+
+    /**
+     * Reads back a Bundle that was spilled to the passed path, or returns null if it no longer exists.
+     */
+    @JvmStatic
+    fun load(path: String, classLoader: ClassLoader?): Bundle? {
+      val bytes = try {
+        File(path).readBytes()
+      } catch (e: Exception) {
+        return null
+      }
+
+      val parcel = Parcel.obtain()
+      return try {
+        parcel.unmarshall(bytes, 0, bytes.size)
+        parcel.setDataPosition(0)
+        parcel.readBundle(classLoader)
+      } finally {
+        parcel.recycle()
+      }
+    }
+
+    /**
+     * Deletes the spill directories under [root] that haven't been used in a while, other than [current].
+     */
+    @JvmStatic
+    fun deleteStaleDirectories(root: File, current: File) {
+      val now = System.currentTimeMillis()
+      root.listFiles()?.forEach { directory ->
+        if (directory != current && now - directory.lastModified() > STALE_DIRECTORY_AGE_MS) {
+          directory.deleteRecursively()
+        }
+      }
+    }
+
+    private val File.generation: Int?
+      get() = name.substringBefore('-').toIntOrNull()
+
+    private fun Bundle.parceledSize(): Int {
+      val parcel = Parcel.obtain()
+      return try {
+        parcel.writeBundle(this)
+        parcel.dataSize()
+      } finally {
+        parcel.recycle()
+      }
+    }
+
+    private fun Bundle.marshall(): ByteArray? {
+      val parcel = Parcel.obtain()
+      return try {
+        parcel.writeBundle(this)
+        parcel.marshall()
+      } catch (e: RuntimeException) {
+        // Bundles holding Binders or file descriptors can't be written to disk.
+        null
+      } finally {
+        parcel.recycle()
+      }
+    }
+  }
+}
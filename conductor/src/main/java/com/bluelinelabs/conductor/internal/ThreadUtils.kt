@@ -2,6 +2,7 @@
 
 package com.bluelinelabs.conductor.internal
 
+import android.os.Handler
 import android.os.Looper
 import android.util.AndroidRuntimeException
 import androidx.annotation.RestrictTo
@@ -14,4 +15,11 @@ internal fun ensureMainThread() {
   }
 }
 
+private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+
+@RestrictTo(LIBRARY_GROUP)
+internal fun postOnMainThread(runnable: Runnable) {
+  mainHandler.post(runnable)
+}
+
 private class CalledFromWrongThreadException(msg: String?) : AndroidRuntimeException(msg)
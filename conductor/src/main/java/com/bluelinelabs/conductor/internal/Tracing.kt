@@ -0,0 +1,30 @@
+@file:JvmName("Tracing")
+
+package com.bluelinelabs.conductor.internal
+
+import com.bluelinelabs.conductor.Conductor
+import com.bluelinelabs.conductor.ConductorTracer
+import com.bluelinelabs.conductor.Controller
+import com.bluelinelabs.conductor.RouterTransaction
+
+/**
+ * Begins a section named after [section] and the class of [controller] if tracing is enabled. Returns the tracer that
+ * the section has to be ended on, which stays the same even if [Conductor.tracer] changes in the meantime, or null if
+ * nothing was traced.
+ */
+@JvmOverloads
+internal fun beginSection(section: String, controller: Controller? = null): ConductorTracer? {
+  val tracer = Conductor.tracer ?: return null
+  tracer.beginSection(if (controller != null) "$section ${controller.javaClass.name}" else section)
+  return tracer
+}
+
+/**
+ * Begins a section named after [section] and the class of the top Controller in [backstack], if it has been created.
+ */
+internal fun beginSection(section: String, backstack: List<RouterTransaction>): ConductorTracer? {
+  val tracer = Conductor.tracer ?: return null
+  val controller = backstack.lastOrNull()?.createdController
+  tracer.beginSection(if (controller != null) "$section ${controller.javaClass.name}" else section)
+  return tracer
+}
@@ -1,6 +1,9 @@
 package com.bluelinelabs.conductor
 
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Test
 
 class BackstackTests {
@@ -57,4 +60,61 @@ class BackstackTests {
     assertEquals(1, backstack.size.toLong())
     assertEquals(transaction1, backstack.peek())
   }
-}
\ No newline at end of file
+
+  @Test
+  fun testContains() {
+    val transaction1 = TestController().asTransaction()
+    val transaction2 = TestController().asTransaction()
+
+    backstack.push(transaction1)
+    assertTrue(transaction1.controller in backstack)
+    assertFalse(transaction2.controller in backstack)
+
+    backstack.push(transaction2)
+    assertTrue(transaction2.controller in backstack)
+
+    backstack.pop()
+    assertFalse(transaction2.controller in backstack)
+  }
+
+  @Test
+  fun testFindByInstanceId() {
+    val transaction1 = TestController().asTransaction()
+    val transaction2 = TestController().asTransaction()
+
+    backstack.setBackstack(listOf(transaction1, transaction2))
+    assertEquals(transaction1, backstack.findByInstanceId(transaction1.controller.instanceId))
+    assertEquals(transaction2, backstack.findByInstanceId(transaction2.controller.instanceId))
+
+    val iterator = backstack.iterator()
+    while (iterator.hasNext()) {
+      if (iterator.next() == transaction1) {
+        iterator.remove()
+      }
+    }
+    assertNull(backstack.findByInstanceId(transaction1.controller.instanceId))
+    assertEquals(transaction2, backstack.findByInstanceId(transaction2.controller.instanceId))
+  }
+
+  @Test
+  fun testFindByDuplicatedTag() {
+    val transaction1 = TestController().asTransaction().tag("tag")
+    val transaction2 = TestController().asTransaction().tag("tag")
+    val transaction3 = TestController().asTransaction().tag("other")
+
+    backstack.push(transaction1)
+    backstack.push(transaction2)
+    backstack.push(transaction3)
+    assertEquals(transaction2, backstack.findByTag("tag"))
+    assertEquals(transaction3, backstack.findByTag("other"))
+
+    backstack.popTo(transaction2)
+    assertNull(backstack.findByTag("other"))
+
+    backstack.pop()
+    assertEquals(transaction1, backstack.findByTag("tag"))
+
+    backstack.pop()
+    assertNull(backstack.findByTag("tag"))
+  }
+}
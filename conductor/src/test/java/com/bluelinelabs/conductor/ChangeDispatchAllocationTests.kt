@@ -0,0 +1,124 @@
+package com.bluelinelabs.conductor
+
+import android.os.Looper
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.ControllerChangeHandler.ControllerChangeListener
+import com.bluelinelabs.conductor.internal.NoOpControllerChangeHandler
+import com.bluelinelabs.conductor.util.AllocationCounter
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeNotNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import kotlin.math.abs
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ChangeDispatchAllocationTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Before
+  fun setup() {
+    // Let the router see its container as fully attached so changes aren't queued up.
+    shadowOf(Looper.getMainLooper()).idle()
+  }
+
+  @Test
+  fun testChangeDispatchDoesNotAllocate() {
+    val allocationCounter = AllocationCounter.forCurrentThread()
+    assumeNotNull(allocationCounter)
+
+    val rootTransaction = TestController().asTransaction()
+    router.setRoot(rootTransaction)
+
+    val topTransaction = TestController().asTransaction(
+      pushChangeHandler = NoOpControllerChangeHandler(),
+      popChangeHandler = NoOpControllerChangeHandler()
+    )
+    router.addChangeListener(EmptyChangeListener())
+
+    val performChanges = {
+      repeat(CYCLE_COUNT) {
+        router.performControllerChange(topTransaction, rootTransaction, true)
+        router.performControllerChange(rootTransaction, topTransaction, false)
+      }
+    }
+
+    // Warm up so that class loading, the first inflation and JIT compilation don't show up in the measurement
+    performChanges()
+
+    assertEquals(0L, allocationCounter!!.measure(performChanges))
+  }
+
+  @Test
+  fun testPushPopCycleAllocationsDoNotDependOnChangeListeners() {
+    val allocationCounter = AllocationCounter.forCurrentThread()
+    assumeNotNull(allocationCounter)
+
+    router.setRoot(TestController().asTransaction())
+
+    // Every cycle pushes and pops a new Controller, which allocates no matter what. Anything the change dispatch
+    // allocates per listener, such as a copy of the listeners, would show up as a difference between these runs.
+    measurePushPopCycles(allocationCounter!!)
+    val withoutListeners = measurePushPopCycles(allocationCounter)
+
+    repeat(8) { router.addChangeListener(EmptyChangeListener()) }
+    measurePushPopCycles(allocationCounter)
+    val withListeners = measurePushPopCycles(allocationCounter)
+
+    // The smallest possible object is 16 bytes, and each cycle runs two changes.
+    val difference = abs(withListeners - withoutListeners)
+    assertTrue("Change listeners added $difference bytes over $CYCLE_COUNT cycles", difference < CYCLE_COUNT * 16L)
+  }
+
+  private fun measurePushPopCycles(allocationCounter: AllocationCounter): Long {
+    val transactions = List(CYCLE_COUNT) { TestController().asTransaction() }
+    return allocationCounter.measure {
+      for (transaction in transactions) {
+        router.pushController(transaction)
+        router.popController(transaction.controller)
+      }
+    }
+  }
+
+  @Test
+  fun testDefaultHandlerIsShared() {
+    val handlers = mutableListOf<ControllerChangeHandler>()
+    router.addChangeListener(object : ControllerChangeListener {
+      override fun onChangeStarted(to: Controller?, from: Controller?, isPush: Boolean, container: ViewGroup, handler: ControllerChangeHandler) {
+        handlers.add(handler)
+      }
+
+      override fun onChangeCompleted(to: Controller?, from: Controller?, isPush: Boolean, container: ViewGroup, handler: ControllerChangeHandler) = Unit
+    })
+
+    router.setRoot(TestController().asTransaction())
+    val controller = TestController()
+    router.pushController(controller.asTransaction())
+    router.popController(controller)
+
+    assertEquals(3, handlers.size)
+    assertSame(handlers[0], handlers[1])
+    assertSame(handlers[1], handlers[2])
+  }
+
+  private class EmptyChangeListener : ControllerChangeListener {
+    override fun onChangeStarted(to: Controller?, from: Controller?, isPush: Boolean, container: ViewGroup, handler: ControllerChangeHandler) = Unit
+    override fun onChangeCompleted(to: Controller?, from: Controller?, isPush: Boolean, container: ViewGroup, handler: ControllerChangeHandler) = Unit
+  }
+
+  companion object {
+    private const val CYCLE_COUNT = 10_000
+  }
+}
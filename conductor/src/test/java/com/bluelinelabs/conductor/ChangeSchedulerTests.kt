@@ -0,0 +1,137 @@
+package com.bluelinelabs.conductor
+
+import android.os.Looper
+import com.bluelinelabs.conductor.ChangeScheduler.PendingChangeQueue
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.time.Duration
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ChangeSchedulerTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Test
+  fun testIntermediatePushesCollapsed() {
+    router.setChangeScheduler(FrameBudgetChangeScheduler())
+    val root = TestController()
+    router.setRoot(root.asTransaction())
+
+    // Queue up changes the way they are while the container is still being attached.
+    router.containerFullyAttached = false
+    val middle = TestController()
+    val top = TestController()
+    router.pushController(middle.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    router.pushController(top.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    shadowOf(Looper.getMainLooper()).idle()
+
+    assertEquals(listOf(root, middle, top), router.backstack.map { it.controller })
+    assertTrue(top.isAttached)
+    assertNull(middle.view)
+    assertFalse(middle.needsAttach)
+    assertFalse(root.isAttached)
+
+    router.popCurrentController()
+    shadowOf(Looper.getMainLooper()).idle()
+
+    assertTrue(middle.isAttached)
+    assertNotNull(middle.view)
+  }
+
+  @Test
+  fun testChangesNotCollapsedWithoutScheduler() {
+    router.setRoot(TestController().asTransaction())
+
+    router.containerFullyAttached = false
+    val middle = TestController()
+    router.pushController(middle.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    shadowOf(Looper.getMainLooper()).idle()
+
+    assertNotNull(middle.view)
+  }
+
+  @Test
+  fun testControllerFromRunChangeDestroyedBySetBackstack() {
+    val scheduler = ManualChangeScheduler()
+    router.setChangeScheduler(scheduler)
+    val root = TestController()
+    router.setRoot(root.asTransaction())
+
+    router.containerFullyAttached = false
+    val middle = TestController()
+    val top = TestController()
+    router.pushController(middle.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    router.pushController(top.asTransaction(pushChangeHandler = MockChangeHandler.noRemoveViewOnPushHandler()))
+    shadowOf(Looper.getMainLooper()).idle()
+
+    // Only the push of the middle Controller has run, which leaves it behind in the queue.
+    val queue = scheduler.queue!!
+    queue.runNext()
+    assertTrue(queue.hasNext())
+
+    router.setBackstack(router.backstack.drop(1), MockChangeHandler.defaultHandler())
+    assertTrue(root.isDestroyed)
+
+    while (queue.hasNext()) {
+      queue.runNext()
+    }
+    assertEquals(listOf(middle, top), router.backstack.map { it.controller })
+    assertTrue(top.isAttached)
+  }
+
+  @Test
+  fun testChangesSpreadAcrossFrames() {
+    val queue = FakeQueue(changeCount = 3, changeDurationMs = 2)
+    val scheduler = FrameBudgetChangeScheduler(frameBudgetMs = 1)
+
+    scheduler.schedule(queue)
+    assertEquals(1, queue.ranChanges)
+
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1))
+    assertEquals(3, queue.ranChanges)
+  }
+
+  @Test
+  fun testChangesWithinBudgetRunImmediately() {
+    val queue = FakeQueue(changeCount = 3, changeDurationMs = 0)
+
+    FrameBudgetChangeScheduler(frameBudgetMs = 1000).schedule(queue)
+
+    assertEquals(3, queue.ranChanges)
+  }
+
+  private class ManualChangeScheduler : ChangeScheduler {
+    var queue: PendingChangeQueue? = null
+
+    override fun schedule(queue: PendingChangeQueue) {
+      this.queue = queue
+    }
+  }
+
+  private class FakeQueue(private val changeCount: Int, private val changeDurationMs: Long) : PendingChangeQueue {
+    var ranChanges = 0
+
+    override fun hasNext() = ranChanges < changeCount
+
+    override fun runNext() {
+      Thread.sleep(changeDurationMs)
+      ranChanges++
+    }
+  }
+}
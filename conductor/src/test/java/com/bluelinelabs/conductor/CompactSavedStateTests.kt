@@ -0,0 +1,124 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.os.Parcel
+import android.util.SparseArray
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.internal.CompactBundleCodec
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class CompactSavedStateTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val controllers = List(20) { TestController() }
+
+  @Before
+  fun setup() {
+    router.setBackstack(
+      controllers.map { it.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()).tag(it.instanceId) },
+      MockChangeHandler.defaultHandler()
+    )
+
+    val top = controllers.last()
+    top.setTargetController(controllers.first())
+    top.getChildRouter(top.view!!.findViewById<ViewGroup>(TestController.CHILD_VIEW_ID_1))
+      .setRoot(TestController().asTransaction(popChangeHandler = MockChangeHandler.defaultHandler()))
+  }
+
+  @Test
+  fun testCodecRoundTrip() {
+    val outState = Bundle()
+    router.saveInstanceState(outState)
+    val backstackState = outState.getParcelable<Bundle>("Router.backstack")!!
+
+    val decoded = CompactBundleCodec.decode(CompactBundleCodec.encode(backstackState), javaClass.classLoader)
+
+    assertBundlesEqual(backstackState, decoded)
+  }
+
+  @Test
+  fun testCompactStateIsSmaller() {
+    val bundleState = Bundle()
+    router.saveInstanceState(bundleState)
+
+    router.setCompactSavedStateEnabled(true)
+    val compactState = Bundle()
+    router.saveInstanceState(compactState)
+
+    assertTrue(compactState.containsKey("Router.backstack.compact"))
+    assertTrue(parceledSize(compactState) < parceledSize(bundleState))
+  }
+
+  @Test
+  fun testRestoreCompactState() {
+    router.setCompactSavedStateEnabled(true)
+    val outState = Bundle()
+    router.saveInstanceState(outState)
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    restoredRouter.restoreInstanceState(outState)
+
+    assertEquals(controllers.map { it.instanceId }, restoredRouter.backstack.map { it.controller.instanceId })
+    assertEquals(controllers.map { it.instanceId }, restoredRouter.backstack.map { it.tag() })
+
+    val restoredTop = restoredRouter.backstack.last().controller
+    assertEquals(controllers.first().instanceId, restoredTop.targetController?.instanceId)
+    assertEquals(1, restoredTop.childRouters.size)
+    assertEquals(1, restoredTop.childRouters[0].backstackSize)
+  }
+
+  private fun assertBundlesEqual(expected: Bundle, actual: Bundle) {
+    assertEquals(expected.keySet(), actual.keySet())
+    for (key in expected.keySet()) {
+      @Suppress("DEPRECATION")
+      assertValuesEqual(expected.get(key), actual.get(key))
+    }
+  }
+
+  private fun assertValuesEqual(expected: Any?, actual: Any?) {
+    when (expected) {
+      is Bundle -> assertBundlesEqual(expected, actual as Bundle)
+      is List<*> -> {
+        assertEquals(expected.size, (actual as List<*>).size)
+        expected.indices.forEach { assertValuesEqual(expected[it], actual[it]) }
+      }
+      is SparseArray<*> -> {
+        // Saved view states don't implement equals, so only their structure is compared.
+        assertEquals(expected.size(), (actual as SparseArray<*>).size())
+        for (i in 0 until expected.size()) {
+          assertEquals(expected.keyAt(i), actual.keyAt(i))
+          assertEquals(expected.valueAt(i)?.javaClass, actual.valueAt(i)?.javaClass)
+        }
+      }
+      else -> assertEquals(expected, actual)
+    }
+  }
+
+  private fun parceledSize(bundle: Bundle): Int {
+    val parcel = Parcel.obtain()
+    try {
+      parcel.writeBundle(bundle)
+      return parcel.dataSize()
+    } finally {
+      parcel.recycle()
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.os.Looper
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ConductorTracerTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val tracer = FakeTracer()
+
+  @After
+  fun teardown() {
+    Conductor.tracer = null
+  }
+
+  @Test
+  fun testSectionsIncludeControllerClass() {
+    Conductor.tracer = tracer
+    router.setRoot(TestController().asTransaction())
+    router.saveInstanceState(Bundle())
+
+    val controllerClass = TestController::class.java.name
+    assertTrue("Router.setBackstack $controllerClass" in tracer.sections)
+    assertTrue("Controller.inflate $controllerClass" in tracer.sections)
+    assertTrue("Controller.attach $controllerClass" in tracer.sections)
+    assertTrue("Controller.saveInstanceState $controllerClass" in tracer.sections)
+    assertEquals(0, tracer.depth)
+  }
+
+  @Test
+  fun testScheduledChangesTraced() {
+    router.setChangeScheduler(FrameBudgetChangeScheduler())
+    router.setRoot(TestController().asTransaction())
+    Conductor.tracer = tracer
+
+    router.containerFullyAttached = false
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    shadowOf(Looper.getMainLooper()).idle()
+
+    assertTrue("Router.runPendingControllerChange ${TestController::class.java.name}" in tracer.sections)
+    assertEquals(0, tracer.depth)
+  }
+
+  @Test
+  fun testSectionsEndedOnOriginalTracer() {
+    Conductor.tracer = tracer
+    router.setRoot(TracerDisablingController().asTransaction())
+    router.saveInstanceState(Bundle())
+
+    assertEquals(0, tracer.depth)
+  }
+
+  @Test
+  fun testNoSectionsWhenDisabled() {
+    router.setRoot(TestController().asTransaction())
+
+    assertEquals(emptyList<String>(), tracer.sections)
+  }
+
+  class TracerDisablingController : TestController() {
+    override fun onSaveInstanceState(outState: Bundle) {
+      super.onSaveInstanceState(outState)
+      Conductor.tracer = null
+    }
+  }
+
+  private class FakeTracer : ConductorTracer {
+    val sections = mutableListOf<String>()
+    var depth = 0
+
+    override fun beginSection(name: String) {
+      sections.add(name)
+      depth++
+    }
+
+    override fun endSection() {
+      depth--
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.bluelinelabs.conductor
+
+import android.os.Looper
+import android.view.View
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ControllerAsyncInflationTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val events = mutableListOf<String>()
+
+  @Test
+  fun testAsyncPush() {
+    router.setRoot(TestController().asTransaction())
+
+    val controller = asyncController()
+    router.pushController(controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+
+    assertEquals(listOf("preCreateView"), events)
+    assertFalse(controller.isAttached)
+
+    awaitView(controller)
+
+    assertEquals(listOf("preCreateView", "postCreateView", "changeStart"), events.take(3))
+    assertTrue(events.contains("changeEnd"))
+    assertTrue(controller.isAttached)
+    assertEquals(1, controller.currentCallState.createViewCalls)
+  }
+
+  @Test
+  fun testPopWhileInflating() {
+    router.setRoot(TestController().asTransaction())
+
+    val controller = asyncController()
+    router.pushController(controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    router.popController(controller)
+
+    assertEquals("preCreateView", events.first())
+    assertTrue(events.contains("postCreateView"))
+    assertTrue(events.indexOf("postCreateView") < events.indexOf("postDestroyView"))
+    assertTrue(controller.isDestroyed)
+    assertNull(controller.view)
+    assertEquals(1, router.backstackSize)
+  }
+
+  private fun asyncController(): TestController {
+    return TestController().apply {
+      isAsyncInflationEnabled = true
+      addLifecycleListener(object : Controller.LifecycleListener() {
+        override fun preCreateView(controller: Controller) {
+          assertMainThread()
+          events.add("preCreateView")
+        }
+
+        override fun postCreateView(controller: Controller, view: View) {
+          assertMainThread()
+          events.add("postCreateView")
+        }
+
+        override fun onChangeStart(controller: Controller, changeHandler: ControllerChangeHandler, changeType: ControllerChangeType) {
+          events.add("changeStart")
+        }
+
+        override fun onChangeEnd(controller: Controller, changeHandler: ControllerChangeHandler, changeType: ControllerChangeType) {
+          events.add("changeEnd")
+        }
+
+        override fun postDestroyView(controller: Controller) {
+          events.add("postDestroyView")
+        }
+      })
+    }
+  }
+
+  private fun awaitView(controller: Controller) {
+    val deadline = System.currentTimeMillis() + 5000
+    while (controller.view == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10)
+      shadowOf(Looper.getMainLooper()).idle()
+    }
+    assertNotNull(controller.view)
+  }
+
+  private fun assertMainThread() {
+    assertTrue(Looper.getMainLooper().thread === Thread.currentThread())
+  }
+}
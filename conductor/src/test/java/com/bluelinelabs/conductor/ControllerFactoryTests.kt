@@ -0,0 +1,94 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ControllerFactoryTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val createdControllers = mutableListOf<String>()
+  private val createdChangeHandlers = mutableListOf<String>()
+
+  @Before
+  fun setup() {
+    Conductor.controllerFactory = object : ControllerFactory() {
+      override fun instantiate(className: String, args: Bundle?): Controller {
+        createdControllers.add(className)
+        return if (className == DependencyController::class.java.name) {
+          DependencyController(RESTORED_DEPENDENCY)
+        } else {
+          super.instantiate(className, args)
+        }
+      }
+    }
+    Conductor.changeHandlerFactory = object : ChangeHandlerFactory() {
+      override fun instantiate(className: String): ControllerChangeHandler {
+        createdChangeHandlers.add(className)
+        return super.instantiate(className)
+      }
+    }
+  }
+
+  @After
+  fun teardown() {
+    Conductor.controllerFactory = ControllerFactory()
+    Conductor.changeHandlerFactory = ChangeHandlerFactory()
+  }
+
+  @Test
+  fun testRestoreUsesFactories() {
+    val controller = DependencyController("original")
+    controller.args.putString(KEY_ARG, "arg")
+    router.setRoot(TestController().asTransaction())
+    router.pushController(controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+
+    val outState = Bundle()
+    router.saveInstanceState(outState)
+    createdControllers.clear()
+    createdChangeHandlers.clear()
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    restoredRouter.restoreInstanceState(outState)
+
+    assertEquals(listOf(TestController::class.java.name, DependencyController::class.java.name), createdControllers)
+    assertTrue(MockChangeHandler::class.java.name in createdChangeHandlers)
+
+    val restoredController = restoredRouter.backstack.last().controller as DependencyController
+    assertEquals(controller.instanceId, restoredController.instanceId)
+    assertEquals(RESTORED_DEPENDENCY, restoredController.dependency)
+    assertEquals("arg", restoredController.args.getString(KEY_ARG))
+  }
+
+  @Test
+  fun testCopyUsesChangeHandlerFactory() {
+    MockChangeHandler.defaultHandler().copy()
+
+    assertEquals(listOf(MockChangeHandler::class.java.name), createdChangeHandlers)
+  }
+
+  class DependencyController(val dependency: String) : TestController()
+
+  companion object {
+    private const val RESTORED_DEPENDENCY = "restored"
+    private const val KEY_ARG = "DependencyController.arg"
+  }
+}
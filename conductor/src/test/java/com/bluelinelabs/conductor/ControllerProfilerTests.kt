@@ -0,0 +1,94 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import com.bluelinelabs.conductor.ControllerProfiler.LatencyHistogram
+import com.bluelinelabs.conductor.ControllerProfiler.Phase
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ControllerProfilerTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val profiler = ControllerProfiler()
+
+  @Test
+  fun testPhasesProfiled() {
+    val measured = mutableListOf<Phase>()
+    profiler.listener = ControllerProfiler.Listener { _, phase, _ -> measured.add(phase) }
+    profiler.install(router)
+
+    router.setRoot(TestController().asTransaction())
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    router.saveInstanceState(Bundle())
+    router.popCurrentController()
+
+    for (phase in Phase.values()) {
+      assertTrue("$phase wasn't measured", phase in measured)
+      assertTrue(profiler.getHistogram(TestController::class.java, phase)!!.count > 0)
+    }
+    assertEquals(setOf(TestController::class.java), profiler.profiledClasses)
+    assertTrue(profiler.dump().startsWith(TestController::class.java.name))
+  }
+
+  @Test
+  fun testExistingControllersProfiled() {
+    val controller = TestController()
+    router.setRoot(TestController().asTransaction())
+    router.pushController(controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    profiler.install(router)
+
+    router.popController(controller)
+
+    assertEquals(1L, profiler.getHistogram(TestController::class.java, Phase.DESTROY)!!.count)
+  }
+
+  @Test
+  fun testUninstall() {
+    profiler.install(router)
+    profiler.uninstall(router)
+
+    router.setRoot(TestController().asTransaction())
+
+    assertNull(profiler.getHistogram(TestController::class.java, Phase.CREATE_VIEW))
+  }
+
+  @Test
+  fun testHistogramPercentiles() {
+    val histogram = LatencyHistogram()
+    repeat(90) { histogram.record(TimeUnit.MILLISECONDS.toNanos(1)) }
+    repeat(10) { histogram.record(TimeUnit.MILLISECONDS.toNanos(100)) }
+
+    assertEquals(100L, histogram.count)
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.maxNanos)
+    assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(1), histogram.percentileNanos(50.0))
+    assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(1), histogram.percentileNanos(90.0))
+    assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(100), histogram.percentileNanos(99.0))
+  }
+
+  @Test
+  fun testBucketBoundsAreContiguous() {
+    for (bucket in 1 until LatencyHistogram.BUCKET_COUNT) {
+      assertTrue(LatencyHistogram.bucketLowerBoundMicros(bucket) > LatencyHistogram.bucketLowerBoundMicros(bucket - 1))
+    }
+    assertEquals(Int.MAX_VALUE.toLong() + 1, LatencyHistogram.bucketLowerBoundMicros(LatencyHistogram.BUCKET_COUNT))
+  }
+
+  private fun assertWithinBucket(expectedNanos: Long, actualNanos: Long) {
+    assertTrue("$actualNanos isn't close to $expectedNanos", actualNanos >= expectedNanos && actualNanos <= expectedNanos * 9 / 8)
+  }
+}
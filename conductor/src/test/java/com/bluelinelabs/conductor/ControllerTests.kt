@@ -1,6 +1,7 @@
 package com.bluelinelabs.conductor
 
 import android.app.Activity
+import android.content.ComponentCallbacks2
 import android.content.ComponentName
 import android.content.Context
 import android.content.Intent
@@ -11,6 +12,7 @@ import android.view.Menu
 import android.view.MenuInflater
 import android.view.MenuItem
 import android.view.SubMenu
+import android.view.View
 import com.bluelinelabs.conductor.Controller.RetainViewMode
 import com.bluelinelabs.conductor.util.AttachFakingFrameLayout
 import com.bluelinelabs.conductor.util.CallState
@@ -518,7 +520,159 @@ class ControllerTests {
     }
   }
 
+  @Test
+  fun testViewPoolReusesViewForSameClass() {
+    val pool = ControllerViewPool()
+
+    val controller1 = RecyclingController()
+    controller1.setRouter(router)
+    controller1.viewPool = pool
+    val view = controller1.inflate(router.container)
+    ViewUtils.reportAttached(view, true)
+    ViewUtils.reportAttached(view, false)
+
+    Assert.assertNull(controller1.view)
+    Assert.assertEquals(1, controller1.recycleCalls)
+    Assert.assertEquals(1, pool.size)
+
+    val otherController = TestController()
+    otherController.setRouter(router)
+    otherController.viewPool = pool
+    Assert.assertNotSame(view, otherController.inflate(router.container))
+
+    val controller2 = RecyclingController()
+    controller2.setRouter(router)
+    controller2.viewPool = pool
+    Assert.assertSame(view, controller2.inflate(router.container))
+    Assert.assertEquals(0, controller2.currentCallState.createViewCalls)
+    Assert.assertEquals(1, controller2.bindCalls)
+    Assert.assertEquals(0, pool.size)
+  }
+
+  @Test
+  fun testViewPoolCaps() {
+    val pool = ControllerViewPool(maxViewsPerClass = 1, maxViews = 1)
+
+    val views = List(3) {
+      val controller = if (it < 2) RecyclingController() else TestController()
+      controller.setRouter(router)
+      controller.viewPool = pool
+      controller.inflate(router.container).also { view ->
+        ViewUtils.reportAttached(view, true)
+        ViewUtils.reportAttached(view, false)
+      }
+    }
+
+    Assert.assertEquals(1, pool.size)
+
+    val controller = TestController()
+    controller.setRouter(router)
+    controller.viewPool = pool
+    Assert.assertSame(views[2], controller.inflate(router.container))
+  }
+
+  @Test
+  fun testViewPoolDropsViewsOfDestroyedActivity() {
+    val pool = ControllerViewPool()
+    val activityController = Robolectric.buildActivity(TestActivity::class.java).setup()
+    val otherRouter = activityController.get().router
+
+    val controller = RecyclingController()
+    controller.setRouter(otherRouter)
+    controller.viewPool = pool
+    val view = controller.inflate(otherRouter.container)
+    ViewUtils.reportAttached(view, true)
+    ViewUtils.reportAttached(view, false)
+    controller.destroy()
+
+    Assert.assertEquals(1, pool.size)
+
+    activityController.destroy()
+
+    Assert.assertEquals(0, pool.size)
+  }
+
+  @Test
+  fun testAdaptiveViewRetention() {
+    router.setRetainedViewLimit(2)
+
+    val controllers = List(3) {
+      TestController().apply {
+        setRouter(router)
+        retainViewMode = RetainViewMode.RETAIN_DETACH_ADAPTIVE
+      }
+    }
+
+    controllers.forEach { controller ->
+      val view = controller.inflate(router.container)
+      router.container.addView(view)
+      ViewUtils.reportAttached(view, true)
+      Assert.assertTrue(controller.isAttached)
+      router.container.removeView(view)
+      ViewUtils.reportAttached(view, false)
+    }
+
+    Assert.assertNull(controllers[0].view)
+    Assert.assertNotNull(controllers[1].view)
+    Assert.assertNotNull(controllers[2].view)
+
+    // Reattaching a retained view makes it the most recently used one
+    val view = controllers[1].inflate(router.container)
+    router.container.addView(view)
+    ViewUtils.reportAttached(view, true)
+    router.container.removeView(view)
+    ViewUtils.reportAttached(view, false)
+    router.setRetainedViewLimit(1)
+
+    Assert.assertNotNull(controllers[1].view)
+    Assert.assertNull(controllers[2].view)
+
+    router.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+    Assert.assertNull(controllers[1].view)
+  }
+
+  @Test
+  fun testAdaptiveViewRetentionIgnoresParentedViews() {
+    router.setRetainedViewLimit(1)
+
+    val (removedController, parentedController) = List(2) {
+      TestController().apply {
+        setRouter(router)
+        retainViewMode = RetainViewMode.RETAIN_DETACH_ADAPTIVE
+      }
+    }
+
+    val removedView = removedController.inflate(router.container)
+    router.container.addView(removedView)
+    ViewUtils.reportAttached(removedView, true)
+    router.container.removeView(removedView)
+    ViewUtils.reportAttached(removedView, false)
+
+    // Detached while staying in its parent, as happens when the Activity is stopped
+    val parentedView = parentedController.inflate(router.container)
+    router.container.addView(parentedView)
+    ViewUtils.reportAttached(parentedView, true)
+    ViewUtils.reportAttached(parentedView, false)
+    shadowOf(Looper.getMainLooper()).idle()
+
+    Assert.assertSame(removedView, removedController.view)
+    Assert.assertSame(parentedView, parentedController.view)
+  }
+
   private fun menuInflater(context: Context): MenuInflater {
     return MenuInflater(context)
   }
-}
\ No newline at end of file
+
+  class RecyclingController : TestController() {
+    var recycleCalls = 0
+    var bindCalls = 0
+
+    override fun onRecycleView(view: View) {
+      recycleCalls++
+    }
+
+    override fun onBindRecycledView(view: View, savedViewState: Bundle?) {
+      bindCalls++
+    }
+  }
+}
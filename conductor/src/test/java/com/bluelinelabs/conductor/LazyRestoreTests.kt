@@ -0,0 +1,130 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class LazyRestoreTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val controllers = List(10) { TestController() }
+
+  @Before
+  fun setup() {
+    Conductor.lazyRestoreEnabled = true
+    router.setBackstack(
+      controllers.map { it.asTransaction().tag(it.instanceId) },
+      MockChangeHandler.defaultHandler()
+    )
+  }
+
+  @After
+  fun teardown() {
+    Conductor.lazyRestoreEnabled = false
+  }
+
+  @Test
+  fun testOnlyVisibleControllersCreated() {
+    val restoredRouter = restoreRouter()
+
+    val backstack = restoredRouter.backstack
+    assertEquals(controllers.map { it.instanceId }, backstack.map { it.tag() })
+    for (i in 0 until backstack.size - 1) {
+      assertNull(backstack[i].createdController)
+    }
+    assertNotNull(backstack.last().createdController)
+  }
+
+  @Test
+  fun testLookupCreatesController() {
+    val restoredRouter = restoreRouter()
+
+    val byId = restoredRouter.getControllerWithInstanceId(controllers[2].instanceId)
+    assertNotNull(byId)
+    assertSame(byId, restoredRouter.backstack[2].createdController)
+    assertSame(restoredRouter, byId!!.router)
+
+    val byTag = restoredRouter.getControllerWithTag(controllers[4].instanceId)
+    assertNotNull(byTag)
+    assertSame(byTag, restoredRouter.backstack[4].createdController)
+    assertNull(restoredRouter.backstack[3].createdController)
+  }
+
+  @Test
+  fun testPopCreatesNextController() {
+    val restoredRouter = restoreRouter()
+
+    restoredRouter.popCurrentController()
+
+    val newTop = restoredRouter.backstack.last()
+    assertNotNull(newTop.createdController)
+    assertEquals(controllers[controllers.size - 2].instanceId, newTop.controller.instanceId)
+    assertNull(restoredRouter.backstack[0].createdController)
+  }
+
+  @Test
+  fun testChildControllerLookup() {
+    val host = controllers[1]
+    router.popToTag(host.instanceId)
+    val child = TestController()
+    host.getChildRouter(host.view!!.findViewById<ViewGroup>(TestController.CHILD_VIEW_ID_1))
+      .setRoot(child.asTransaction())
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+
+    val restoredRouter = restoreRouter()
+    assertNull(restoredRouter.backstack[1].createdController)
+
+    val restoredChild = restoredRouter.getControllerWithInstanceId(child.instanceId)
+    assertNotNull(restoredChild)
+    assertNotNull(restoredRouter.backstack[1].createdController)
+    assertNull(restoredRouter.backstack[0].createdController)
+  }
+
+  @Test
+  fun testUncreatedStateRoundTrip() {
+    val restoredRouter = restoreRouter()
+
+    val outState = Bundle()
+    restoredRouter.saveInstanceState(outState)
+    Conductor.lazyRestoreEnabled = false
+    val secondRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    secondRouter.restoreInstanceState(outState)
+
+    assertEquals(controllers.map { it.instanceId }, secondRouter.backstack.map { it.controller.instanceId })
+    secondRouter.backstack.forEach { assertNotNull(it.createdController) }
+  }
+
+  private fun restoreRouter(): Router {
+    val outState = Bundle()
+    router.saveInstanceState(outState)
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    restoredRouter.restoreInstanceState(outState)
+    restoredRouter.rebindIfNeeded()
+    return restoredRouter
+  }
+}
@@ -0,0 +1,143 @@
+package com.bluelinelabs.conductor
+
+import com.bluelinelabs.conductor.internal.NoOpControllerChangeHandler
+import com.bluelinelabs.conductor.util.AllocationCounter
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeNotNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class LifecycleListenerDispatchTests {
+
+  @Test
+  fun testChangeEventsDoNotAllocate() {
+    val allocationCounter = AllocationCounter.forCurrentThread()
+    assumeNotNull(allocationCounter)
+
+    val controller = TestController()
+    repeat(3) {
+      controller.addLifecycleListener(object : Controller.LifecycleListener() {})
+    }
+    val handler = NoOpControllerChangeHandler()
+    val dispatchEvents = {
+      repeat(EVENT_COUNT) {
+        controller.changeStarted(handler, ControllerChangeType.PUSH_ENTER)
+        controller.changeEnded(handler, ControllerChangeType.PUSH_ENTER)
+      }
+    }
+
+    // Warm up so that class loading and JIT compilation don't show up in the measurement
+    dispatchEvents()
+
+    assertEquals(0L, allocationCounter!!.measure(dispatchEvents))
+  }
+
+  @Test
+  fun testAttachEventsDoNotAllocate() {
+    val allocationCounter = AllocationCounter.forCurrentThread()
+    assumeNotNull(allocationCounter)
+
+    val controller = TestController()
+    val router = Robolectric.buildActivity(TestActivity::class.java).setup().get().router
+    router.setRoot(controller.asTransaction())
+    val view = controller.view!!
+    val attachCycles = {
+      repeat(EVENT_COUNT) {
+        controller.detach(view, false, true)
+        controller.attach(view)
+      }
+    }
+
+    assertListenersDoNotAllocate(allocationCounter!!, controller, EVENT_COUNT, attachCycles)
+  }
+
+  @Test
+  fun testViewEventsDoNotAllocate() {
+    val allocationCounter = AllocationCounter.forCurrentThread()
+    assumeNotNull(allocationCounter)
+
+    val controller = TestController()
+    val router = Robolectric.buildActivity(TestActivity::class.java).setup().get().router
+    router.setRoot(controller.asTransaction())
+    val container = router.container!!
+    val viewCycles = {
+      repeat(VIEW_CYCLE_COUNT) {
+        val view = controller.view!!
+        controller.detach(view, true, false)
+        container.removeView(view)
+
+        val newView = controller.inflate(container)
+        container.addView(newView)
+        controller.attach(newView)
+      }
+    }
+
+    assertListenersDoNotAllocate(allocationCounter!!, controller, VIEW_CYCLE_COUNT, viewCycles)
+  }
+
+  @Test
+  fun testListenersModifiedDuringDispatch() {
+    val controller = TestController()
+    val calls = mutableListOf<String>()
+
+    val addedListener = object : Controller.LifecycleListener() {
+      override fun onChangeStart(controller: Controller, changeHandler: ControllerChangeHandler, changeType: ControllerChangeType) {
+        calls.add("added")
+      }
+    }
+
+    controller.addLifecycleListener(object : Controller.LifecycleListener() {
+      override fun onChangeStart(controller: Controller, changeHandler: ControllerChangeHandler, changeType: ControllerChangeType) {
+        calls.add("removing")
+        controller.removeLifecycleListener(this)
+        controller.addLifecycleListener(addedListener)
+      }
+    })
+    controller.addLifecycleListener(object : Controller.LifecycleListener() {
+      override fun onChangeStart(controller: Controller, changeHandler: ControllerChangeHandler, changeType: ControllerChangeType) {
+        calls.add("other")
+      }
+    })
+
+    val handler = NoOpControllerChangeHandler()
+    controller.changeStarted(handler, ControllerChangeType.PUSH_ENTER)
+    assertEquals(listOf("removing", "other"), calls)
+
+    calls.clear()
+    controller.changeStarted(handler, ControllerChangeType.PUSH_ENTER)
+    assertEquals(listOf("other", "added"), calls)
+  }
+
+  // Creating and attaching views allocates on its own, so the cycles are measured with and without listeners. Any
+  // allocation made while dispatching would cost at least a few bytes for every listener in every cycle.
+  private fun assertListenersDoNotAllocate(
+    allocationCounter: AllocationCounter,
+    controller: Controller,
+    cycleCount: Int,
+    cycles: () -> Unit
+  ) {
+    cycles()
+    val withoutListeners = allocationCounter.measure(cycles)
+
+    repeat(3) {
+      controller.addLifecycleListener(object : Controller.LifecycleListener() {})
+    }
+    cycles()
+    val withListeners = allocationCounter.measure(cycles)
+
+    val listenerAllocations = withListeners - withoutListeners
+    assertTrue("Dispatching to listeners allocated $listenerAllocations bytes", listenerAllocations < cycleCount)
+  }
+
+  companion object {
+    private const val EVENT_COUNT = 10_000
+    private const val VIEW_CYCLE_COUNT = 1_000
+  }
+}
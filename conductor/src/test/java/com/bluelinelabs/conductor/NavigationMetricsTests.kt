@@ -0,0 +1,82 @@
+package com.bluelinelabs.conductor
+
+import android.os.Looper
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class NavigationMetricsTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val metrics = NavigationMetrics()
+  private val measurements = mutableListOf<NavigationMetrics.ChangeMeasurement>()
+
+  @Before
+  fun setup() {
+    metrics.addListener { measurements.add(it) }
+    router.setNavigationMetrics(metrics)
+  }
+
+  @Test
+  fun testChangesMeasured() {
+    router.setRoot(TestController().asTransaction())
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    idleFrames()
+
+    assertEquals(2, measurements.size)
+
+    val push = measurements[1]
+    assertEquals(TestController::class.java.name, push.toClassName)
+    assertEquals(TestController::class.java.name, push.fromClassName)
+    assertTrue(push.isPush)
+    assertEquals(MockChangeHandler::class.java.name, push.changeHandlerClassName)
+    assertTrue(push.inflateTimeNanos > 0)
+    assertTrue(push.changeLatencyNanos >= push.animationDurationNanos)
+
+    val stats = metrics.getStats(TestController::class.java)!!
+    assertEquals(2, stats.changeCount)
+    assertEquals(2, stats.changeLatency.count)
+  }
+
+  @Test
+  fun testUnmeasuredAfterRemoval() {
+    router.setNavigationMetrics(null)
+    router.setRoot(TestController().asTransaction())
+    idleFrames()
+
+    assertEquals(0, measurements.size)
+    assertNull(metrics.getStats(TestController::class.java))
+  }
+
+  @Test
+  fun testHistogram() {
+    val histogram = NavigationMetrics.Histogram()
+    listOf(1L, 3L, 3L, 10L, 5000L).forEach { histogram.add(TimeUnit.MILLISECONDS.toNanos(it)) }
+
+    assertEquals(5, histogram.count)
+    assertEquals(listOf(1, 0, 2, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1), histogram.buckets)
+    assertEquals(4L, histogram.percentileMs(50))
+    assertEquals(5000L, histogram.percentileMs(100))
+  }
+
+  private fun idleFrames() {
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1))
+  }
+}
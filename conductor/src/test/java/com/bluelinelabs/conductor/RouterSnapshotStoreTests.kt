@@ -0,0 +1,145 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.os.Looper
+import android.view.View
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.time.Duration
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class RouterSnapshotStoreTests {
+
+  private val activity = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+
+  private val router = activity.router
+
+  private val pendingWrites = mutableListOf<Runnable>()
+  private val executor = Executor { pendingWrites.add(it) }
+
+  @Before
+  fun setup() {
+    shadowOf(Looper.getMainLooper()).idle()
+  }
+
+  @Test
+  fun testSnapshotRestored() {
+    val store = RouterSnapshotStore(activity, SNAPSHOT_NAME, 0, executor)
+    store.attach(router)
+
+    val controllers = List(3) { TestController() }
+    controllers.forEach { router.pushController(it.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler())) }
+    idleAndWrite()
+
+    val restoredRouter = newRouter()
+    assertTrue(RouterSnapshotStore(activity, SNAPSHOT_NAME, 0, executor).restore(restoredRouter))
+    assertEquals(controllers.map { it.instanceId }, restoredRouter.backstack.map { it.controller.instanceId })
+  }
+
+  @Test
+  fun testWritesDebounced() {
+    val store = RouterSnapshotStore(activity, SNAPSHOT_NAME, 1000, executor)
+    store.attach(router)
+
+    repeat(5) { router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler())) }
+    shadowOf(Looper.getMainLooper()).idle()
+    assertEquals(0, pendingWrites.size)
+
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000))
+    assertEquals(1, pendingWrites.size)
+  }
+
+  @Test
+  fun testClear() {
+    val store = RouterSnapshotStore(activity, SNAPSHOT_NAME, 0, executor)
+    store.attach(router)
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    idleAndWrite()
+
+    store.clear()
+    idleAndWrite()
+
+    assertFalse(store.restore(newRouter()))
+  }
+
+  @Test
+  fun testDetach() {
+    val store = RouterSnapshotStore(activity, SNAPSHOT_NAME, 0, executor)
+    store.attach(router)
+    store.detach(router)
+
+    router.pushController(TestController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    shadowOf(Looper.getMainLooper()).idle()
+
+    assertEquals(0, pendingWrites.size)
+  }
+
+  @Test
+  fun testSnapshotDoesNotStaleViewState() {
+    val store = RouterSnapshotStore(activity, SNAPSHOT_NAME, 0, executor)
+    store.attach(router)
+
+    val controller = ViewStateController()
+    router.pushController(controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    idleAndWrite()
+
+    // The snapshot saved the view as it was, but the view changes again before it's destroyed by the next push.
+    controller.text = "changed"
+    router.pushController(
+      TestController().asTransaction(
+        pushChangeHandler = MockChangeHandler.defaultHandler(),
+        popChangeHandler = MockChangeHandler.defaultHandler()
+      )
+    )
+    controller.text = null
+    router.popCurrentController()
+
+    assertEquals("changed", controller.text)
+  }
+
+  private fun idleAndWrite() {
+    shadowOf(Looper.getMainLooper()).idle()
+    pendingWrites.forEach { it.run() }
+    pendingWrites.clear()
+  }
+
+  private fun newRouter(): Router {
+    return Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+  }
+
+  class ViewStateController : TestController() {
+    var text: String? = "initial"
+
+    override fun onSaveViewState(view: View, outState: Bundle) {
+      super.onSaveViewState(view, outState)
+      outState.putString(KEY_TEXT, text)
+    }
+
+    override fun onRestoreViewState(view: View, savedViewState: Bundle) {
+      super.onRestoreViewState(view, savedViewState)
+      text = savedViewState.getString(KEY_TEXT)
+    }
+  }
+
+  companion object {
+    private const val SNAPSHOT_NAME = "test"
+    private const val KEY_TEXT = "ViewStateController.text"
+  }
+}
@@ -1,5 +1,6 @@
 package com.bluelinelabs.conductor
 
+import android.content.ComponentCallbacks2
 import android.view.View
 import com.bluelinelabs.conductor.Controller.LifecycleListener
 import com.bluelinelabs.conductor.changehandler.FadeChangeHandler
@@ -56,6 +57,43 @@ class RouterTests {
     Assert.assertNull(router.getControllerWithInstanceId("fake id"))
   }
 
+  @Test
+  fun testGetChildByInstanceId() {
+    val parent = TestController()
+    router.setRoot(parent.asTransaction())
+    val childRouter = parent.getChildRouter(
+      parent.view!!.findViewById(TestController.CHILD_VIEW_ID_1)
+    )
+    val child = TestController()
+    childRouter.setRoot(child.asTransaction())
+
+    Assert.assertEquals(child, router.getControllerWithInstanceId(child.instanceId))
+    Assert.assertEquals(child, childRouter.getControllerWithInstanceId(child.instanceId))
+    Assert.assertEquals(parent, router.getControllerWithInstanceId(parent.instanceId))
+    Assert.assertNull(childRouter.getControllerWithInstanceId(parent.instanceId))
+
+    val newChild = TestController()
+    childRouter.setRoot(newChild.asTransaction())
+    Assert.assertNull(router.getControllerWithInstanceId(child.instanceId))
+    Assert.assertEquals(newChild, router.getControllerWithInstanceId(newChild.instanceId))
+
+    parent.removeChildRouter(childRouter)
+    Assert.assertNull(router.getControllerWithInstanceId(newChild.instanceId))
+  }
+
+  @Test
+  fun testGetByInstanceIdAfterPop() {
+    val controller1 = TestController()
+    val controller2 = TestController()
+    router.pushController(controller1.asTransaction())
+    router.pushController(controller2.asTransaction())
+    Assert.assertEquals(controller2, router.getControllerWithInstanceId(controller2.instanceId))
+
+    router.popCurrentController()
+    Assert.assertNull(router.getControllerWithInstanceId(controller2.instanceId))
+    Assert.assertEquals(controller1, router.getControllerWithInstanceId(controller1.instanceId))
+  }
+
   @Test
   fun testGetByTag() {
     val controller1Tag = "controller1"
@@ -433,4 +471,151 @@ class RouterTests {
     Assert.assertFalse(controller1.isBeingDestroyed())
     Assert.assertTrue(controller3.isBeingDestroyed())
   }
-}
\ No newline at end of file
+
+  @Test
+  fun testBatchedPushAndReplace() {
+    val rootController = TestController()
+    router.setRoot(rootController.asTransaction())
+
+    val intermediateController = TestController()
+    val topController = TestController()
+    router.batch {
+      pushController(intermediateController.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+      replaceTopController(topController.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+
+      Assert.assertEquals(2, backstackSize)
+      Assert.assertTrue(rootController.isAttached)
+    }
+
+    Assert.assertEquals(2, router.backstackSize)
+    Assert.assertEquals(topController, router.backstack[1].controller)
+    Assert.assertNull(intermediateController.view)
+    Assert.assertTrue(intermediateController.isDestroyed)
+    Assert.assertTrue(topController.isAttached)
+    Assert.assertFalse(rootController.isAttached)
+  }
+
+  @Test
+  fun testBatchedPops() {
+    val controllers = List(4) { TestController() }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    router.beginTransaction()
+    router.popCurrentController()
+    router.beginTransaction()
+    router.popCurrentController()
+    router.commit()
+
+    Assert.assertTrue(controllers[3].isAttached)
+    Assert.assertEquals(2, router.backstackSize)
+
+    router.commit()
+
+    Assert.assertEquals(2, router.backstackSize)
+    Assert.assertTrue(controllers[1].isAttached)
+    Assert.assertTrue(controllers[2].isDestroyed)
+    Assert.assertTrue(controllers[3].isDestroyed)
+    Assert.assertNull(controllers[2].view)
+  }
+
+  @Test
+  fun testFailedBatchDiscarded() {
+    val rootController = TestController()
+    val pushedController = TestController()
+    router.setRoot(rootController.asTransaction())
+
+    try {
+      router.batch {
+        pushController(pushedController.asTransaction())
+        throw IllegalArgumentException()
+      }
+    } catch (e: IllegalArgumentException) {
+    }
+
+    Assert.assertEquals(1, router.backstackSize)
+    Assert.assertTrue(rootController.isAttached)
+    Assert.assertNull(pushedController.view)
+
+    router.batch {
+      pushController(pushedController.asTransaction())
+    }
+
+    Assert.assertEquals(2, router.backstackSize)
+    Assert.assertTrue(pushedController.isAttached)
+  }
+
+  @Test(expected = IllegalStateException::class)
+  fun testCommitWithoutBeginTransaction() {
+    router.commit()
+  }
+
+  @Test
+  fun testPrewarmedViewIsReused() {
+    router.setRoot(TestController().asTransaction())
+
+    val controller = TestController()
+    val transaction = controller.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler())
+    router.prewarm(transaction)
+
+    val prewarmedView = controller.view
+    Assert.assertNotNull(prewarmedView)
+    Assert.assertNull(prewarmedView!!.parent)
+    Assert.assertFalse(controller.isAttached)
+    Assert.assertEquals(1, controller.currentCallState.createViewCalls)
+
+    router.pushController(transaction)
+
+    Assert.assertSame(prewarmedView, controller.view)
+    Assert.assertTrue(controller.isAttached)
+    Assert.assertEquals(1, controller.currentCallState.createViewCalls)
+  }
+
+  @Test
+  fun testPrewarmLimit() {
+    router.setRoot(TestController().asTransaction())
+    router.setPrewarmLimit(1)
+
+    val controller1 = TestController()
+    val controller2 = TestController()
+    router.prewarm(controller1.asTransaction())
+    router.prewarm(controller2.asTransaction())
+
+    Assert.assertNull(controller1.view)
+    Assert.assertNotNull(controller2.view)
+    Assert.assertFalse(controller1.isDestroyed)
+  }
+
+  @Test
+  fun testTrimmedPrewarmedControllerReleased() {
+    router.setRoot(TestController().asTransaction())
+    router.setPrewarmLimit(1)
+
+    val controller1 = TestController()
+    router.prewarm(controller1.asTransaction())
+    router.prewarm(TestController().asTransaction())
+
+    Assert.assertNull(controller1.router)
+    Assert.assertEquals(1, controller1.currentCallState.contextUnavailableCalls)
+    Assert.assertNull(router.getControllerWithInstanceId(controller1.instanceId))
+
+    router.pushController(controller1.asTransaction())
+    Assert.assertSame(router, controller1.router)
+    Assert.assertTrue(controller1.isAttached)
+  }
+
+  @Test
+  fun testPrewarmedViewReleasedOnTrimMemory() {
+    router.setRoot(TestController().asTransaction())
+
+    val controller = TestController()
+    router.prewarm(controller.asTransaction())
+    router.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+
+    Assert.assertNull(controller.view)
+    Assert.assertNotNull(router.backstack[0].controller.view)
+
+    router.pushController(controller.asTransaction())
+    Assert.assertTrue(controller.isAttached)
+    Assert.assertEquals(2, controller.currentCallState.createViewCalls)
+  }
+}
@@ -0,0 +1,63 @@
+package com.bluelinelabs.conductor
+
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.FileDescriptor
+import java.io.PrintWriter
+import java.io.StringWriter
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class RouterTreeDumpTests {
+
+  private val activity = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+
+  private val router = activity.router
+
+  @Test
+  fun testDumpTree() {
+    val root = TestController()
+    val top = TestController()
+    router.setRoot(root.asTransaction().tag("root"))
+    router.pushController(top.asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+
+    val child = TestController()
+    top.getChildRouter(top.view!!.findViewById<ViewGroup>(TestController.CHILD_VIEW_ID_1))
+      .setRoot(child.asTransaction())
+
+    val lines = router.dumpTree().lines().filter { it.isNotEmpty() }
+
+    assertEquals(5, lines.size)
+    assertTrue(lines[0].startsWith("ActivityHostedRouter{"))
+    assertTrue(lines[0].contains("backstack=2"))
+    assertTrue(lines[1].startsWith("  #0 ${TestController::class.java.name}{id=${root.instanceId}, tag=root"))
+    assertTrue(lines[1].contains("state=detached"))
+    assertTrue(lines[2].startsWith("  #1 ${TestController::class.java.name}{id=${top.instanceId}"))
+    assertTrue(lines[2].contains("state=attached, view=attached"))
+    assertTrue(lines[3].startsWith("    ControllerHostedRouter{container=0x${Integer.toHexString(TestController.CHILD_VIEW_ID_1)}"))
+    assertTrue(lines[4].startsWith("      #0 ${TestController::class.java.name}{id=${child.instanceId}"))
+  }
+
+  @Test
+  fun testDumpedThroughLifecycleHandler() {
+    router.setRoot(TestController().asTransaction())
+
+    val out = StringWriter()
+    val writer = PrintWriter(out)
+    @Suppress("DEPRECATION")
+    activity.fragmentManager.findFragmentByTag("LifecycleHandler").dump("", FileDescriptor(), writer, emptyArray())
+    writer.flush()
+
+    assertTrue(out.toString().contains(router.dumpTree().lines().first()))
+  }
+}
@@ -0,0 +1,136 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SavedStateCachingTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private var saveCount = 0
+
+  @Test
+  fun testUnchangedControllersReuseState() {
+    val controllers = List(40) { cachingController() }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val firstSave = saveEntries()
+    saveCount = 0
+    val secondSave = saveEntries()
+
+    for (i in 0 until controllers.size - 1) {
+      assertSame(firstSave[i], secondSave[i])
+    }
+    assertNotSame(firstSave.last(), secondSave.last())
+
+    // Only the attached top controller had to be saved again
+    assertEquals(1, saveCount)
+  }
+
+  @Test
+  fun testMarkSavedStateDirty() {
+    val controllers = List(3) { cachingController() }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val firstSave = saveEntries()
+    controllers[0].markSavedStateDirty()
+    saveCount = 0
+    val secondSave = saveEntries()
+
+    assertNotSame(firstSave[0], secondSave[0])
+    assertSame(firstSave[1], secondSave[1])
+    assertEquals(2, saveCount)
+  }
+
+  @Test
+  fun testDetachInvalidatesState() {
+    val bottom = cachingController()
+    val top = cachingController()
+    router.setBackstack(listOf(bottom.asTransaction(), top.asTransaction()), MockChangeHandler.defaultHandler())
+
+    val firstSave = saveEntries()
+    router.popController(top)
+    router.pushController(cachingController().asTransaction(pushChangeHandler = MockChangeHandler.defaultHandler()))
+    val secondSave = saveEntries()
+
+    // The bottom controller was attached and detached again in between saves.
+    assertNotSame(firstSave[0], secondSave[0])
+  }
+
+  @Test
+  fun testCachingDisabledByDefault() {
+    router.setBackstack(List(3) { TestController().asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val firstSave = saveEntries()
+    val secondSave = saveEntries()
+
+    for (i in firstSave.indices) {
+      assertNotSame(firstSave[i], secondSave[i])
+    }
+  }
+
+  @Test
+  fun testBundleReuse() {
+    Conductor.savedStateBundleReuseEnabled = true
+    try {
+      val controllers = List(3) { TestController() }
+      router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+      val firstSave = saveEntries()
+      controllers[0].setTargetController(controllers[1])
+      val outState = Bundle()
+      router.saveInstanceState(outState)
+      val secondSave = outState.getParcelable<Bundle>("Router.backstack")!!
+        .getParcelableArrayList<Bundle>("Backstack.entries")!!
+        .reversed()
+
+      for (i in firstSave.indices) {
+        assertSame(firstSave[i], secondSave[i])
+      }
+
+      val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+        .setup()
+        .get()
+        .router
+      restoredRouter.restoreInstanceState(outState)
+
+      assertEquals(controllers.map { it.instanceId }, restoredRouter.backstack.map { it.controller.instanceId })
+      assertEquals(controllers[1].instanceId, restoredRouter.backstack[0].controller.targetController?.instanceId)
+    } finally {
+      Conductor.savedStateBundleReuseEnabled = false
+    }
+  }
+
+  private fun cachingController(): TestController {
+    return TestController().apply {
+      isSavedStateCachingEnabled = true
+      addLifecycleListener(object : Controller.LifecycleListener() {
+        override fun onSaveInstanceState(controller: Controller, outState: Bundle) {
+          saveCount++
+        }
+      })
+    }
+  }
+
+  // Returns the saved Bundle for each entry, bottom of the backstack first.
+  private fun saveEntries(): List<Bundle> {
+    val outState = Bundle()
+    router.saveInstanceState(outState)
+    val backstackState = outState.getParcelable<Bundle>("Router.backstack")!!
+    return backstackState.getParcelableArrayList<Bundle>("Backstack.entries")!!.reversed()
+  }
+}
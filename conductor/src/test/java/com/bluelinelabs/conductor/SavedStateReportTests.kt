@@ -0,0 +1,122 @@
+package com.bluelinelabs.conductor
+
+import android.os.Bundle
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SavedStateReportTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Test
+  fun testReportIncludesChildRouters() {
+    val root = TestController()
+    val large = LargeStateController()
+    router.setBackstack(listOf(root.asTransaction(), large.asTransaction()), MockChangeHandler.defaultHandler())
+
+    val child = LargeStateController()
+    large.getChildRouter(large.view!!.findViewById<ViewGroup>(TestController.CHILD_VIEW_ID_1))
+      .setRoot(child.asTransaction())
+
+    val report = router.savedStateReport
+
+    assertEquals(listOf(root.instanceId, large.instanceId, child.instanceId), report.entries.map { it.instanceId })
+    assertEquals(listOf(0, 0, 1), report.entries.map { it.depth })
+
+    val largeEntry = report.entries[1]
+    assertEquals(LargeStateController::class.java.name, largeEntry.className)
+    assertTrue(largeEntry.savedStateSize > STATE_SIZE)
+    assertTrue(largeEntry.viewStateSize > 0)
+    assertTrue(largeEntry.childRoutersSize > report.entries[2].totalSize)
+
+    assertTrue(report.totalSize > 2 * STATE_SIZE)
+    assertEquals(LargeStateController::class.java.name, report.sizesByClass.keys.first())
+    assertEquals(setOf(large.instanceId, child.instanceId), report.entriesOver(STATE_SIZE).map { it.instanceId }.toSet())
+  }
+
+  @Test
+  fun testReportOnCompactState() {
+    router.setCompactSavedStateEnabled(true)
+    val controllers = List(3) { LargeStateController() }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val report = router.savedStateReport
+
+    assertEquals(controllers.map { it.instanceId }, report.entries.map { it.instanceId })
+    report.entries.forEach { assertTrue(it.savedStateSize > STATE_SIZE) }
+  }
+
+  @Test
+  fun testLoggerReportsOversizedControllers() {
+    val reported = mutableListOf<SavedStateReport.Entry>()
+    val logger = object : SavedStateSizeLogger(STATE_SIZE) {
+      override fun onOversizedState(controller: Controller, entry: SavedStateReport.Entry) {
+        reported.add(entry)
+      }
+    }
+
+    val small = TestController()
+    val large = LargeStateController()
+    small.addLifecycleListener(logger)
+    large.addLifecycleListener(logger)
+    router.setBackstack(listOf(small.asTransaction(), large.asTransaction()), MockChangeHandler.defaultHandler())
+
+    router.saveInstanceState(Bundle())
+
+    assertEquals(listOf(large.instanceId), reported.map { it.instanceId })
+  }
+
+  @Test
+  fun testLoggerDoesNotSaveChildRoutersAgain() {
+    val reported = mutableListOf<SavedStateReport.Entry>()
+    val logger = object : SavedStateSizeLogger(0) {
+      override fun onOversizedState(controller: Controller, entry: SavedStateReport.Entry) {
+        reported.add(entry)
+      }
+    }
+
+    val parent = TestController()
+    parent.addLifecycleListener(logger)
+    router.setRoot(parent.asTransaction())
+
+    val child = LargeStateController()
+    parent.getChildRouter(parent.view!!.findViewById<ViewGroup>(TestController.CHILD_VIEW_ID_1))
+      .setRoot(child.asTransaction())
+
+    router.saveInstanceState(Bundle())
+
+    assertEquals(1, child.saveCount)
+    assertEquals(listOf(parent.instanceId), reported.map { it.instanceId })
+    assertTrue(reported[0].childRoutersSize > STATE_SIZE)
+  }
+
+  class LargeStateController : TestController() {
+    var saveCount = 0
+
+    private val data = ByteArray(STATE_SIZE)
+
+    override fun onSaveInstanceState(outState: Bundle) {
+      super.onSaveInstanceState(outState)
+      outState.putByteArray(KEY_DATA, data)
+      saveCount++
+    }
+  }
+
+  companion object {
+    private const val STATE_SIZE = 10_000
+    private const val KEY_DATA = "LargeStateController.data"
+  }
+}
@@ -0,0 +1,152 @@
+package com.bluelinelabs.conductor
+
+import android.view.ViewGroup
+import com.bluelinelabs.conductor.ControllerChangeHandler.ControllerChangeListener
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SetBackstackTests {
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  private val changes = mutableListOf<Change>()
+
+  @Before
+  fun setup() {
+    router.addChangeListener(object : ControllerChangeListener {
+      override fun onChangeStarted(
+        to: Controller?,
+        from: Controller?,
+        isPush: Boolean,
+        container: ViewGroup,
+        handler: ControllerChangeHandler
+      ) {
+        changes.add(Change(to, from, isPush))
+      }
+
+      override fun onChangeCompleted(
+        to: Controller?,
+        from: Controller?,
+        isPush: Boolean,
+        container: ViewGroup,
+        handler: ControllerChangeHandler
+      ) = Unit
+    })
+  }
+
+  @Test
+  fun testReplaceEntireBackstack() {
+    val oldControllers = List(2) { TestController() }
+    router.setBackstack(oldControllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+    changes.clear()
+
+    val newControllers = List(3) { TestController() }
+    router.setBackstack(newControllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    assertEquals(listOf(Change(newControllers[2], oldControllers[1], true)), changes)
+    oldControllers.forEach { assertTrue(it.isDestroyed) }
+    newControllers.forEach { assertFalse(it.isDestroyed) }
+  }
+
+  @Test
+  fun testRemoveHiddenTransaction() {
+    val controllers = List(3) { TestController() }
+    val transactions = controllers.map { it.asTransaction() }
+    router.setBackstack(transactions, MockChangeHandler.defaultHandler())
+    changes.clear()
+
+    router.setBackstack(listOf(transactions[0], transactions[2]), MockChangeHandler.defaultHandler())
+
+    assertTrue(changes.isEmpty())
+    assertTrue(controllers[1].isDestroyed)
+    assertFalse(controllers[0].isDestroyed)
+    assertFalse(controllers[2].isDestroyed)
+  }
+
+  @Test
+  fun testPopToExistingTransaction() {
+    val controllers = List(3) { TestController() }
+    val transactions = controllers.map { it.asTransaction() }
+    router.setBackstack(transactions, MockChangeHandler.defaultHandler())
+    changes.clear()
+
+    router.setBackstack(transactions.subList(0, 2), MockChangeHandler.defaultHandler())
+
+    assertEquals(listOf(Change(controllers[1], controllers[2], false)), changes)
+    assertTrue(controllers[2].isDestroyed)
+  }
+
+  @Test
+  fun testVisibleTransactionsReconciled() {
+    val root = TestController()
+    val oldTop = TestController()
+    router.setBackstack(
+      listOf(
+        root.asTransaction(),
+        oldTop.asTransaction(pushChangeHandler = MockChangeHandler.noRemoveViewOnPushHandler())
+      ),
+      MockChangeHandler.defaultHandler()
+    )
+    changes.clear()
+
+    val middle = TestController()
+    val newTop = TestController()
+    router.setBackstack(
+      listOf(
+        router.backstack[0],
+        middle.asTransaction(pushChangeHandler = MockChangeHandler.noRemoveViewOnPushHandler()),
+        newTop.asTransaction(pushChangeHandler = MockChangeHandler.noRemoveViewOnPushHandler())
+      ),
+      MockChangeHandler.defaultHandler()
+    )
+
+    assertEquals(
+      listOf(
+        Change(null, oldTop, false),
+        Change(middle, root, true),
+        Change(newTop, middle, true)
+      ),
+      changes
+    )
+    assertTrue(oldTop.isDestroyed)
+    assertFalse(root.isDestroyed)
+  }
+
+  @Test
+  fun testDeepBackstackReordered() {
+    val controllers = List(50) { TestController() }
+    val transactions = controllers.map { it.asTransaction() }
+    router.setBackstack(transactions, MockChangeHandler.defaultHandler())
+    changes.clear()
+
+    val reordered = transactions.reversed()
+    router.setBackstack(reordered, MockChangeHandler.defaultHandler())
+
+    assertEquals(listOf(Change(controllers[0], controllers[49], false)), changes)
+    assertEquals(controllers.reversed(), router.backstack.map { it.controller })
+    controllers.forEach { assertFalse(it.isDestroyed) }
+  }
+
+  @Test(expected = IllegalStateException::class)
+  fun testDuplicateControllersRejected() {
+    val controllers = List(10) { TestController() }
+    val transactions = controllers.map { it.asTransaction() } + controllers[3].asTransaction()
+    router.setBackstack(transactions, MockChangeHandler.defaultHandler())
+  }
+
+  private data class Change(val to: Controller?, val from: Controller?, val isPush: Boolean)
+}
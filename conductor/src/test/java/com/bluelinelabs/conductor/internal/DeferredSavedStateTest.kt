@@ -0,0 +1,135 @@
+package com.bluelinelabs.conductor.internal
+
+import android.content.ComponentCallbacks2
+import android.os.Bundle
+import android.os.Parcel
+import android.os.Parcelable
+import com.bluelinelabs.conductor.Conductor
+import com.bluelinelabs.conductor.TestController
+import com.bluelinelabs.conductor.asTransaction
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import io.kotest.matchers.ints.shouldBeExactly
+import io.kotest.matchers.shouldBe
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class DeferredSavedStateTest {
+
+  private val pendingTasks = mutableListOf<Runnable>()
+  private val executor = Executor { pendingTasks.add(it) }
+
+  @After
+  fun teardown() {
+    Conductor.stateSerializationExecutor = null
+    Conductor.savedStateBundleReuseEnabled = false
+  }
+
+  @Test
+  fun parcelBeforeBackgroundWorkRuns() {
+    val state = DeferredSavedState.serialize(
+      listOf("first", "second"),
+      listOf(Bundle().apply { putString("value", "1") }, Bundle().apply { putString("value", "2") }),
+      null,
+      0,
+      executor
+    )
+
+    val restored = state.parcelAndUnParcel().state
+
+    restored.getBundle("first")!!.getString("value") shouldBe "1"
+    restored.getBundle("second")!!.getString("value") shouldBe "2"
+  }
+
+  @Test
+  fun stateAvailableWithoutParceling() {
+    val state = DeferredSavedState.serialize(listOf("key"), listOf(Bundle()), null, 0, executor)
+    pendingTasks.forEach { it.run() }
+
+    state.state.keySet() shouldBe setOf("key")
+  }
+
+  @Test
+  fun activityRestore() {
+    Conductor.stateSerializationExecutor = executor
+    val activityController = Robolectric.buildActivity(TestActivity::class.java).setup()
+    val controllers = List(3) { TestController() }
+    activityController.get().router.setBackstack(
+      controllers.map { it.asTransaction() },
+      MockChangeHandler.defaultHandler()
+    )
+
+    val outState = Bundle()
+    activityController.pause().saveInstanceState(outState)
+    pendingTasks.size shouldBeExactly 1
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup(outState.parcelAndUnParcel())
+      .get()
+      .router
+
+    restoredRouter.backstack.map { it.controller.instanceId } shouldBe controllers.map { it.instanceId }
+  }
+
+  @Test
+  fun stateCapturedBeforeLaterChanges() {
+    Conductor.stateSerializationExecutor = executor
+    Conductor.savedStateBundleReuseEnabled = true
+    val activityController = Robolectric.buildActivity(TestActivity::class.java).setup()
+    val router = activityController.get().router
+    val controllers = List(3) { TestController().apply { args.putString(KEY_ARG, "saved") } }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val outState = Bundle()
+    activityController.pause().saveInstanceState(outState)
+
+    // Everything here happens on the main thread before the background work gets to run.
+    controllers.forEach { it.args.putString(KEY_ARG, "changed") }
+    router.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE)
+    router.saveInstanceState(Bundle())
+    pendingTasks.forEach { it.run() }
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup(outState.parcelAndUnParcel())
+      .get()
+      .router
+
+    restoredRouter.backstack.map { it.controller.instanceId } shouldBe controllers.map { it.instanceId }
+    restoredRouter.backstack.forEach { it.controller.args.getString(KEY_ARG) shouldBe "saved" }
+  }
+
+  private fun DeferredSavedState.parcelAndUnParcel(): DeferredSavedState {
+    val parcel = Parcel.obtain()
+    try {
+      writeToParcel(parcel, 0)
+      parcel.setDataPosition(0)
+      @Suppress("UNCHECKED_CAST")
+      val creator = DeferredSavedState::class.java.getField("CREATOR").get(null) as Parcelable.Creator<DeferredSavedState>
+      return creator.createFromParcel(parcel)
+    } finally {
+      parcel.recycle()
+    }
+  }
+
+  private fun Bundle.parcelAndUnParcel(): Bundle {
+    val parcel = Parcel.obtain()
+    try {
+      parcel.writeBundle(this)
+      parcel.setDataPosition(0)
+      return parcel.readBundle(DeferredSavedStateTest::class.java.classLoader)!!
+    } finally {
+      parcel.recycle()
+    }
+  }
+
+  companion object {
+    private const val KEY_ARG = "DeferredSavedStateTest.arg"
+  }
+}
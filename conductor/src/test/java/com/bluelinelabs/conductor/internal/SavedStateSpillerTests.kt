@@ -0,0 +1,175 @@
+package com.bluelinelabs.conductor.internal
+
+import android.os.Bundle
+import android.os.Parcel
+import com.bluelinelabs.conductor.Conductor
+import com.bluelinelabs.conductor.TestController
+import com.bluelinelabs.conductor.asTransaction
+import com.bluelinelabs.conductor.util.MockChangeHandler
+import com.bluelinelabs.conductor.util.TestActivity
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SavedStateSpillerTests {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val router = Robolectric.buildActivity(TestActivity::class.java)
+    .setup()
+    .get()
+    .router
+
+  @Test
+  fun testUnderBudget() {
+    router.setRoot(TestController().asTransaction())
+    val states = listOf(saveRouter())
+
+    val spiller = SavedStateSpiller(temporaryFolder.root)
+    assertSame(states, spiller.spillIfNeeded(states, Int.MAX_VALUE))
+    assertEquals(0, temporaryFolder.root.listFiles()!!.size)
+  }
+
+  @Test
+  fun testSpillAndRestore() {
+    val controllers = List(3) { largeStateController() }
+    router.setBackstack(controllers.map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+    val state = saveRouter()
+
+    val spilledState = SavedStateSpiller(temporaryFolder.root).spillIfNeeded(listOf(state), 2 * STATE_SIZE)[0]
+
+    // Only as many Controllers as needed to get under the budget should have been spilled, and the original
+    // state must not have been touched.
+    assertEquals(2, temporaryFolder.root.listFiles()!!.size)
+    assertTrue(parceledSize(spilledState) < 2 * STATE_SIZE)
+    assertTrue(parceledSize(state) > 3 * STATE_SIZE)
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    restoredRouter.restoreInstanceState(spilledState)
+
+    restoredRouter.backstack.forEachIndexed { index, transaction ->
+      val controller = transaction.controller as LargeStateController
+      assertEquals(controllers[index].instanceId, controller.instanceId)
+      assertArrayEquals(controllers[index].data, controller.data)
+    }
+  }
+
+  @Test
+  fun testOldGenerationsDeleted() {
+    router.setRoot(largeStateController().asTransaction())
+
+    val spiller = SavedStateSpiller(temporaryFolder.root)
+    spiller.spillIfNeeded(listOf(saveRouter()), STATE_SIZE / 2)
+    val firstFiles = temporaryFolder.root.listFiles()!!.toList()
+    spiller.spillIfNeeded(listOf(saveRouter()), STATE_SIZE / 2)
+
+    val secondFiles = temporaryFolder.root.listFiles()!!.toList()
+    assertEquals(1, secondFiles.size)
+    firstFiles.forEach { assertTrue(!it.exists()) }
+  }
+
+  @Test
+  fun testLazilyRestoredStateSurvivesNextSave() {
+    val controllers = List(2) { largeStateController() }
+    router.setBackstack((controllers + TestController()).map { it.asTransaction() }, MockChangeHandler.defaultHandler())
+
+    val spiller = SavedStateSpiller(temporaryFolder.root)
+    val spilledState = spiller.spillIfNeeded(listOf(saveRouter()), STATE_SIZE / 2)[0]
+    val firstFiles = temporaryFolder.root.listFiles()!!.toList()
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    Conductor.lazyRestoreEnabled = true
+    try {
+      restoredRouter.restoreInstanceState(spilledState)
+    } finally {
+      Conductor.lazyRestoreEnabled = false
+    }
+    assertNull(restoredRouter.backstack[0].createdController)
+
+    // The next save deletes the files of the first one before the hidden Controllers have ever been created.
+    val nextState = Bundle().also { restoredRouter.saveInstanceState(it) }
+    spiller.spillIfNeeded(listOf(nextState), Int.MAX_VALUE)
+    firstFiles.forEach { assertTrue(!it.exists()) }
+
+    restoredRouter.backstack.take(2).forEachIndexed { index, transaction ->
+      val controller = transaction.controller as LargeStateController
+      assertEquals(controllers[index].instanceId, controller.instanceId)
+      assertArrayEquals(controllers[index].data, controller.data)
+    }
+  }
+
+  @Test
+  fun testMissingFile() {
+    assertNull(SavedStateSpiller.load(temporaryFolder.root.absolutePath + "/missing", null))
+
+    router.setRoot(largeStateController().asTransaction())
+    val spilledState = SavedStateSpiller(temporaryFolder.root).spillIfNeeded(listOf(saveRouter()), STATE_SIZE / 2)[0]
+    temporaryFolder.root.listFiles()!!.forEach { it.delete() }
+
+    val restoredRouter = Robolectric.buildActivity(TestActivity::class.java)
+      .setup()
+      .get()
+      .router
+    restoredRouter.restoreInstanceState(spilledState)
+
+    val controller = restoredRouter.backstack[0].controller as LargeStateController
+    assertNotNull(controller)
+    assertNull(controller.data)
+  }
+
+  private fun saveRouter(): Bundle {
+    return Bundle().also { router.saveInstanceState(it) }
+  }
+
+  private fun parceledSize(bundle: Bundle): Int {
+    val parcel = Parcel.obtain()
+    try {
+      parcel.writeBundle(bundle)
+      return parcel.dataSize()
+    } finally {
+      parcel.recycle()
+    }
+  }
+
+  private fun largeStateController(): LargeStateController {
+    return LargeStateController().apply { data = ByteArray(STATE_SIZE) { it.toByte() } }
+  }
+
+  class LargeStateController : TestController() {
+    var data: ByteArray? = null
+
+    override fun onSaveInstanceState(outState: Bundle) {
+      super.onSaveInstanceState(outState)
+      outState.putByteArray(KEY_DATA, data)
+    }
+
+    override fun onRestoreInstanceState(savedInstanceState: Bundle) {
+      super.onRestoreInstanceState(savedInstanceState)
+      data = savedInstanceState.getByteArray(KEY_DATA)
+    }
+  }
+
+  companion object {
+    private const val STATE_SIZE = 50_000
+    private const val KEY_DATA = "LargeStateController.data"
+  }
+}
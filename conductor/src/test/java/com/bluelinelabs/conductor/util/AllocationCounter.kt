@@ -0,0 +1,41 @@
+package com.bluelinelabs.conductor.util
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Counts the bytes allocated by the current thread while running a block of code.
+ */
+class AllocationCounter private constructor(private val threadMXBean: com.sun.management.ThreadMXBean) {
+
+  private val threadId = Thread.currentThread().id
+
+  init {
+    threadMXBean.isThreadAllocatedMemoryEnabled = true
+  }
+
+  /**
+   * Returns the number of bytes allocated by [block], not counting what reading the counter allocates itself.
+   */
+  fun measure(block: () -> Unit): Long {
+    val calibrationStart = threadMXBean.getThreadAllocatedBytes(threadId)
+    val readOverhead = threadMXBean.getThreadAllocatedBytes(threadId) - calibrationStart
+
+    val before = threadMXBean.getThreadAllocatedBytes(threadId)
+    block()
+    return threadMXBean.getThreadAllocatedBytes(threadId) - before - readOverhead
+  }
+
+  companion object {
+    /**
+     * Returns a counter for the current thread, or null if this JVM can't count allocations per thread.
+     */
+    fun forCurrentThread(): AllocationCounter? {
+      val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+      return if (threadMXBean != null && threadMXBean.isThreadAllocatedMemorySupported) {
+        AllocationCounter(threadMXBean)
+      } else {
+        null
+      }
+    }
+  }
+}